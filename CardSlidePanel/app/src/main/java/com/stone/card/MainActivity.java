@@ -10,8 +10,8 @@ import android.view.Window;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.bumptech.glide.Glide;
 import com.stone.card.library.CardAdapter;
+import com.stone.card.library.CardImageLoader;
 import com.stone.card.library.CardSlidePanel;
 
 import java.util.ArrayList;
@@ -36,6 +36,7 @@ public class MainActivity extends FragmentActivity {
             "霍建华", "胡歌", "曾志伟", "吴孟达", "梁朝伟"}; // 12个人名
 
     private List<CardDataItem> dataList = new ArrayList<>();
+    private CardImageLoader imageLoader;
 
 
     @Override
@@ -48,6 +49,9 @@ public class MainActivity extends FragmentActivity {
 
     private void initView() {
         final CardSlidePanel slidePanel = (CardSlidePanel) findViewById(R.id.image_slide_panel);
+        // 图片按卡片大小解码，缓存卡片层数 + 预加载的数量
+        imageLoader = new CardImageLoader(this, slidePanel.getStackDepth() + 4);
+        slidePanel.setImageLoader(imageLoader);
 
         // 1. 左右滑动监听
         cardSwitchListener = new CardSlidePanel.CardSwitchListener() {
@@ -96,6 +100,15 @@ public class MainActivity extends FragmentActivity {
                 return dataList.get(index);
             }
 
+            @Override
+            public void onStackWindowChanged(int showingIndex, int stackDepth) {
+                // 提前解码即将进入卡片栈的图片
+                int end = Math.min(dataList.size(), showingIndex + stackDepth + 4);
+                for (int index = showingIndex + stackDepth; index < end; index++) {
+                    imageLoader.preload(dataList.get(index).imagePath);
+                }
+            }
+
             @Override
             public Rect obtainDraggableArea(View view) {
                 // 可滑动区域定制，该函数只会调用一次
@@ -120,12 +133,14 @@ public class MainActivity extends FragmentActivity {
             }
         }, 500);
 
-        // 3. notifyDataSetChanged调用
+        // 3. 追加数据
         findViewById(R.id.notify_change).setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                int positionStart = dataList.size();
                 appendDataList();
-                slidePanel.getAdapter().notifyDataSetChanged();
+                // 追加在卡片栈之后的数据不需要重新绑定已经显示的卡片
+                slidePanel.getAdapter().notifyItemRangeInserted(positionStart, dataList.size() - positionStart);
             }
         });
     }
@@ -169,7 +184,7 @@ public class MainActivity extends FragmentActivity {
         }
 
         public void bindData(CardDataItem itemData) {
-            Glide.with(MainActivity.this).load(itemData.imagePath).into(imageView);
+            imageLoader.load(imageView, itemData.imagePath);
             userNameTv.setText(itemData.userName);
             imageNumTv.setText(itemData.imageNum + "");
             likeNumTv.setText(itemData.likeNum + "");
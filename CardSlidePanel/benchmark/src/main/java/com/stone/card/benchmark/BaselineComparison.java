@@ -0,0 +1,120 @@
+package com.stone.card.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对比两次 JMH 的 csv 结果（-rf csv），打印每一项的变化
+ * <p>
+ * 用法：BaselineComparison &lt;baseline.csv&gt; &lt;current.csv&gt; [threshold%]，
+ * 任何一项比基线慢超过阈值时以非 0 退出。基线文件不存在时只打印本次结果。
+ * 所有 benchmark 都是 AverageTime 模式，分数越小越好。
+ *
+ * @author im_dsd
+ */
+public final class BaselineComparison {
+    private static final float DEFAULT_THRESHOLD = 10f;
+
+    private BaselineComparison() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: BaselineComparison <baseline.csv> <current.csv> [threshold%]");
+            System.exit(2);
+        }
+        float threshold = args.length > 2 ? Float.parseFloat(args[2]) : DEFAULT_THRESHOLD;
+        File baselineFile = new File(args[0]);
+        Map<String, Double> current = readScores(new File(args[1]));
+        if (!baselineFile.exists()) {
+            System.out.println("No baseline at " + baselineFile + ", run jmhBaseline to record one.");
+            for (Map.Entry<String, Double> entry : current.entrySet()) {
+                System.out.println(String.format("%-70s %12.3f", entry.getKey(), entry.getValue()));
+            }
+            return;
+        }
+        Map<String, Double> baseline = readScores(baselineFile);
+
+        int regressions = 0;
+        System.out.println(String.format("%-70s %12s %12s %8s", "benchmark", "baseline", "current", "delta"));
+        for (Map.Entry<String, Double> entry : current.entrySet()) {
+            Double before = baseline.get(entry.getKey());
+            double after = entry.getValue();
+            if (before == null || before <= 0) {
+                System.out.println(String.format("%-70s %12s %12.3f %8s", entry.getKey(), "-", after, "new"));
+                continue;
+            }
+            double delta = (after - before) / before * 100;
+            boolean regressed = delta > threshold;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.println(String.format("%-70s %12.3f %12.3f %+7.1f%%%s",
+                entry.getKey(), before, after, delta, regressed ? "  REGRESSION" : ""));
+        }
+        if (regressions > 0) {
+            System.err.println(regressions + " benchmark(s) slower than baseline by more than " + threshold + "%");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 读取 csv，key 是 benchmark 名称加上所有参数
+     */
+    private static Map<String, Double> readScores(File file) throws IOException {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            List<String> header = splitCsv(reader.readLine());
+            int nameColumn = header.indexOf("Benchmark");
+            int scoreColumn = header.indexOf("Score");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                List<String> cells = splitCsv(line);
+                StringBuilder key = new StringBuilder(cells.get(nameColumn));
+                for (int i = 0; i < header.size() && i < cells.size(); i++) {
+                    if (header.get(i).startsWith("Param: ")) {
+                        key.append(' ').append(header.get(i).substring("Param: ".length()))
+                            .append('=').append(cells.get(i));
+                    }
+                }
+                scores.put(key.toString(), Double.parseDouble(cells.get(scoreColumn)));
+            }
+        } finally {
+            reader.close();
+        }
+        return scores;
+    }
+
+    private static List<String> splitCsv(String line) {
+        List<String> cells = new ArrayList<>();
+        if (line == null) {
+            return cells;
+        }
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted) {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+}
@@ -0,0 +1,173 @@
+package com.stone.card.benchmark;
+
+import com.stone.card.core.CardStack;
+import com.stone.card.core.DeckEngine;
+import com.stone.card.core.FrameClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 卡片栈状态机的耗时，数据和时钟都是模拟的，只统计 {@link DeckEngine} 本身
+ * <p>
+ * swipe：飞出一张卡片并推进时钟直到重新排序；insertInsideStack：在卡片栈中间插入一条数据；
+ * dataSetChanged：有稳定 id 时的整体刷新。
+ *
+ * @author im_dsd
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeckEngineBenchmark {
+    private static final int FLY_DURATION = 300;
+    private static final long FRAME_NANOS = 16666667;
+
+    @Param({"3", "4", "6", "10"})
+    public int depth;
+
+    private final ManualClock mClock = new ManualClock();
+    private final VirtualHost mHost = new VirtualHost();
+    private final DeckEngine<Card> mEngine = new DeckEngine<>(mHost, mClock);
+
+    @Setup
+    public void setUp() {
+        mEngine.reset(depth);
+        for (int i = 0; i < depth; i++) {
+            mEngine.addCard(new Card());
+        }
+        mEngine.bindAll();
+    }
+
+    @Benchmark
+    public int swipe() {
+        mEngine.release(mEngine.getStack().top(), FLY_DURATION);
+        // 第一帧开始计时，第二帧飞出结束
+        mClock.frame(FRAME_NANOS);
+        mClock.frame(FLY_DURATION * 1000000L);
+        return mEngine.getShowing();
+    }
+
+    @Benchmark
+    public int insertInsideStack() {
+        mHost.mCount++;
+        mEngine.onItemRangeInserted(mEngine.getShowing() + 1, 1);
+        return mHost.mBindCount;
+    }
+
+    @Benchmark
+    public int dataSetChanged() {
+        mEngine.onDataSetChanged();
+        return mEngine.getShowing();
+    }
+
+    private static final class Card implements CardStack.Slot {
+        private int mSlot = -1;
+
+        @Override
+        public int getStackSlot() {
+            return mSlot;
+        }
+
+        @Override
+        public void setStackSlot(int slot) {
+            mSlot = slot;
+        }
+    }
+
+    private static final class ManualClock implements FrameClock {
+        private long mNowNanos = 0;
+        private Runnable mPending;
+
+        @Override
+        public void scheduleFrame(Runnable frame) {
+            mPending = frame;
+        }
+
+        @Override
+        public long getFrameTimeNanos() {
+            return mNowNanos;
+        }
+
+        void frame(long elapsedNanos) {
+            mNowNanos += elapsedNanos;
+            Runnable frame = mPending;
+            mPending = null;
+            if (frame != null) {
+                frame.run();
+            }
+        }
+    }
+
+    /**
+     * 数据足够多的 adapter，id 等于位置
+     */
+    private static final class VirtualHost implements DeckEngine.Host<Card> {
+        private int mCount = Integer.MAX_VALUE / 2;
+        private int mBindCount;
+
+        @Override
+        public int getItemCount() {
+            return mCount;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public long getItemId(int index) {
+            return index;
+        }
+
+        @Override
+        public Object getItem(int index) {
+            return null;
+        }
+
+        @Override
+        public Card bindCard(Card card, int index) {
+            mBindCount++;
+            return card;
+        }
+
+        @Override
+        public void hideCard(Card card) {
+        }
+
+        @Override
+        public void revealCard(Card card, int fadeOrder) {
+        }
+
+        @Override
+        public Card recycleToBottom(Card card) {
+            return card;
+        }
+
+        @Override
+        public void onFlyFinished(Card card) {
+        }
+
+        @Override
+        public void onShow(int index) {
+        }
+
+        @Override
+        public void onStackWindowChanged(int showingIndex, int stackDepth) {
+        }
+    }
+}
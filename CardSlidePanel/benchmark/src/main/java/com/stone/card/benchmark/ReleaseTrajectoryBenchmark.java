@@ -0,0 +1,91 @@
+package com.stone.card.benchmark;
+
+import com.stone.card.core.ReleaseTrajectory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 松手轨迹计算的耗时
+ * <p>
+ * fling：速度超过阈值的快速甩动；drag：速度不够但位移超过阈值；springBack：回到中间；mixed：三者随机混合。
+ *
+ * @author im_dsd
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReleaseTrajectoryBenchmark {
+    private static final int SAMPLES = 1024;
+    private static final int PANEL_WIDTH = 1080;
+    private static final int PANEL_HEIGHT = 1920;
+    private static final int CHILD_WIDTH = 960;
+    private static final int INIT_X = (PANEL_WIDTH - CHILD_WIDTH) / 2;
+    private static final int INIT_Y = 30;
+
+    @Param({"fling", "drag", "springBack", "mixed"})
+    public String distribution;
+
+    private final ReleaseTrajectory mTrajectory = new ReleaseTrajectory();
+    private final int[] mLeft = new int[SAMPLES];
+    private final int[] mTop = new int[SAMPLES];
+    private final float[] mXvel = new float[SAMPLES];
+    private final float[] mYvel = new float[SAMPLES];
+    private int mCursor;
+
+    @Setup
+    public void setUp() {
+        mTrajectory.setGeometry(INIT_X, INIT_Y, PANEL_WIDTH, PANEL_HEIGHT, CHILD_WIDTH);
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            String kind = distribution;
+            if ("mixed".equals(kind)) {
+                int pick = random.nextInt(3);
+                kind = pick == 0 ? "fling" : pick == 1 ? "drag" : "springBack";
+            }
+            int sign = random.nextBoolean() ? 1 : -1;
+            if ("fling".equals(kind)) {
+                mXvel[i] = sign * (ReleaseTrajectory.X_VEL_THRESHOLD + random.nextInt(7200));
+                mYvel[i] = random.nextInt(4000) - 2000;
+                mLeft[i] = INIT_X + random.nextInt(400) - 200;
+            } else if ("drag".equals(kind)) {
+                mXvel[i] = random.nextInt(1200) - 600;
+                mYvel[i] = random.nextInt(1200) - 600;
+                mLeft[i] = INIT_X + sign * (ReleaseTrajectory.X_DISTANCE_THRESHOLD + random.nextInt(600));
+            } else {
+                mXvel[i] = random.nextInt(1200) - 600;
+                mYvel[i] = random.nextInt(1200) - 600;
+                mLeft[i] = INIT_X + random.nextInt(500) - 250;
+            }
+            mTop[i] = INIT_Y + random.nextInt(800) - 400;
+        }
+    }
+
+    @Benchmark
+    public int compute() {
+        int i = mCursor++ & (SAMPLES - 1);
+        int flyType = mTrajectory.compute(mLeft[i], mTop[i], mXvel[i], mYvel[i]);
+        return flyType + mTrajectory.getFinalX() + mTrajectory.getFinalY();
+    }
+
+    @Benchmark
+    public int flyDuration() {
+        int i = mCursor++ & (SAMPLES - 1);
+        return ReleaseTrajectory.flyDuration(PANEL_WIDTH - mLeft[i]);
+    }
+}
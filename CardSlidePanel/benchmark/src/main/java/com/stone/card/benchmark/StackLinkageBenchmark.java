@@ -0,0 +1,83 @@
+package com.stone.card.benchmark;
+
+import com.stone.card.core.StackLinkage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一帧拖动中所有联动层的计算耗时
+ * <p>
+ * uniform：拖动距离在整个联动范围内均匀分布；nearRest：刚开始拖动，大部分层的联动比例为 0；
+ * saturated：拖动距离超过联动范围，所有层的联动比例都为 1。
+ *
+ * @author im_dsd
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StackLinkageBenchmark {
+    private static final int SAMPLES = 1024;
+    private static final int Y_OFFSET_STEP = 40;
+
+    @Param({"3", "4", "6", "10"})
+    public int depth;
+
+    @Param({"uniform", "nearRest", "saturated"})
+    public String distribution;
+
+    private final int[] mDx = new int[SAMPLES];
+    private final int[] mDy = new int[SAMPLES];
+    private int mCursor;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int range;
+        int base;
+        if ("nearRest".equals(distribution)) {
+            base = 0;
+            range = StackLinkage.MAX_SLIDE_DISTANCE / 10;
+        } else if ("saturated".equals(distribution)) {
+            base = StackLinkage.MAX_SLIDE_DISTANCE * 2;
+            range = StackLinkage.MAX_SLIDE_DISTANCE;
+        } else {
+            base = 0;
+            range = StackLinkage.MAX_SLIDE_DISTANCE * 2;
+        }
+        for (int i = 0; i < SAMPLES; i++) {
+            int distance = base + random.nextInt(range);
+            int dx = random.nextInt(distance + 1);
+            mDx[i] = random.nextBoolean() ? dx : -dx;
+            mDy[i] = random.nextBoolean() ? distance - dx : dx - distance;
+        }
+    }
+
+    @Benchmark
+    public float linkageFrame() {
+        int i = mCursor++ & (SAMPLES - 1);
+        float rate = StackLinkage.dragRate(mDx[i], mDy[i]);
+        float sum = 0;
+        for (int layer = 1; layer < depth - 1; layer++) {
+            float layerRate = StackLinkage.layerRate(rate, layer);
+            sum += StackLinkage.layerOffset(layer, layerRate, Y_OFFSET_STEP);
+            sum += StackLinkage.layerScale(layer, layerRate);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,43 @@
+package com.stone.card.core;
+
+/**
+ * 卡片图片解码时的采样计算，以及复用池中的图片能否通过 inBitmap 写入，不依赖 Android
+ *
+ * @author im_dsd
+ */
+public final class BitmapReuse {
+    /**
+     * ARGB_8888 每个像素的字节数
+     */
+    public static final int ARGB_8888_BYTES = 4;
+
+    private BitmapReuse() {
+    }
+
+    /**
+     * 采样到不小于目标大小的最大的 2 的幂
+     */
+    public static int sampleSize(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (sourceWidth / (sampleSize * 2) >= targetWidth
+            && sourceHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * 4.4 及以上只要求已经分配的内存不小于解码结果需要的字节数；
+     * 解码时的取整与计算的大小不同导致放不下时，由解码失败后的重试兜底
+     */
+    public static boolean fitsAllocation(long allocationBytes, int width, int height, int bytesPerPixel) {
+        return allocationBytes >= (long) width * height * bytesPerPixel;
+    }
+
+    /**
+     * 4.4 以下只能复用大小完全相同并且没有采样缩放的图片
+     */
+    public static boolean fitsExact(int bitmapWidth, int bitmapHeight, int width, int height, boolean exactDecode) {
+        return exactDecode && bitmapWidth == width && bitmapHeight == height;
+    }
+}
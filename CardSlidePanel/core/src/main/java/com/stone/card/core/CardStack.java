@@ -0,0 +1,223 @@
+package com.stone.card.core;
+
+/**
+ * 固定容量的卡片栈，从顶到底存放每一层的卡片
+ * <p>
+ * 内部是一个环形数组，每张卡片记住自己在数组中的位置，所以查找层级、顶层卡片移到底层
+ * 都是 O(1) 的，并且除了 {@link #reset(int)} 改变容量之外不会分配任何对象。
+ * 松手后等待重新排序的卡片也放在固定容量的队列中。
+ *
+ * @param <T> 卡片类型
+ * @author im_dsd
+ */
+public final class CardStack<T extends CardStack.Slot> {
+
+    /**
+     * 卡片在栈中的位置，由 {@link CardStack} 维护
+     */
+    public interface Slot {
+        int getStackSlot();
+
+        void setStackSlot(int slot);
+    }
+
+    private static final int NO_SLOT = -1;
+
+    private Object[] mItems = new Object[0];
+    /**
+     * 顶层卡片在数组中的位置
+     */
+    private int mHead = 0;
+    private int mSize = 0;
+    /**
+     * 松手后等待重新排序的卡片，按数组位置标记，队列中存放的也是数组位置
+     */
+    private boolean[] mReleased = new boolean[0];
+    private int[] mReleasedQueue = new int[0];
+    private int mReleasedHead = 0;
+    private int mReleasedCount = 0;
+
+    /**
+     * 清空并设置容量，容量不变时不会重新分配数组
+     */
+    public void reset(int capacity) {
+        clear();
+        if (mItems.length != capacity) {
+            mItems = new Object[capacity];
+            mReleased = new boolean[capacity];
+            mReleasedQueue = new int[capacity];
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < mSize; i++) {
+            int slot = physicalSlot(i);
+            ((Slot) mItems[slot]).setStackSlot(NO_SLOT);
+            mItems[slot] = null;
+            mReleased[slot] = false;
+        }
+        mHead = 0;
+        mSize = 0;
+        mReleasedHead = 0;
+        mReleasedCount = 0;
+    }
+
+    /**
+     * 在最底层加入一张卡片
+     */
+    public void add(T item) {
+        if (mSize == mItems.length) {
+            throw new IllegalStateException("CardStack is full, capacity " + mItems.length);
+        }
+        int slot = physicalSlot(mSize);
+        mItems[slot] = item;
+        item.setStackSlot(slot);
+        mSize++;
+    }
+
+    /**
+     * 获取某一层的卡片，0 是顶层
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int layer) {
+        if (layer < 0 || layer >= mSize) {
+            throw new IndexOutOfBoundsException("layer " + layer + ", size " + mSize);
+        }
+        return (T) mItems[physicalSlot(layer)];
+    }
+
+    public T top() {
+        return get(0);
+    }
+
+    public T bottom() {
+        return get(mSize - 1);
+    }
+
+    /**
+     * 卡片所在的层，不在栈中时返回 -1
+     */
+    public int layerOf(Object item) {
+        if (!(item instanceof Slot)) {
+            return -1;
+        }
+        int slot = ((Slot) item).getStackSlot();
+        if (slot < 0 || slot >= mItems.length || mItems[slot] != item) {
+            return -1;
+        }
+        return (slot - mHead + mItems.length) % mItems.length;
+    }
+
+    /**
+     * 顶层卡片移到最底层，其余卡片各上移一层。栈是满的，只需要移动头部，卡片的位置都不变
+     */
+    public T rotate() {
+        if (mSize != mItems.length) {
+            throw new IllegalStateException("CardStack must be full to rotate, size " + mSize);
+        }
+        T top = top();
+        mHead = physicalSlot(1);
+        return top;
+    }
+
+    /**
+     * 与 {@link #rotate()} 相反：卡片放到顶层，原来最底层的卡片移出，其余卡片各下移一层。
+     * 传入的就是最底层的卡片时只是反向轮转
+     *
+     * @return 移出的卡片，传入的是最底层的卡片时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public T pushTop(T item) {
+        if (mSize != mItems.length) {
+            throw new IllegalStateException("CardStack must be full to push, size " + mSize);
+        }
+        int slot = physicalSlot(mSize - 1);
+        T bottom = (T) mItems[slot];
+        if (bottom != item && layerOf(item) >= 0) {
+            throw new IllegalArgumentException("item is already in the stack");
+        }
+        mHead = slot;
+        if (bottom == item) {
+            return null;
+        }
+        bottom.setStackSlot(NO_SLOT);
+        mReleased[slot] = false;
+        mItems[slot] = item;
+        item.setStackSlot(slot);
+        return bottom;
+    }
+
+    /**
+     * 用另一张卡片替换栈中的卡片，层级不变
+     */
+    public void replace(T item, T replacement) {
+        int layer = layerOf(item);
+        if (layer < 0 || layerOf(replacement) >= 0) {
+            throw new IllegalArgumentException("can not replace layer " + layer);
+        }
+        int slot = item.getStackSlot();
+        item.setStackSlot(NO_SLOT);
+        mItems[slot] = replacement;
+        replacement.setStackSlot(slot);
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public int capacity() {
+        return mItems.length;
+    }
+
+    /**
+     * 标记卡片已经松手，加入等待重新排序的队列
+     */
+    public void markReleased(T item) {
+        int slot = item.getStackSlot();
+        if (layerOf(item) < 0 || mReleased[slot]) {
+            return;
+        }
+        mReleased[slot] = true;
+        mReleasedQueue[(mReleasedHead + mReleasedCount) % mReleasedQueue.length] = slot;
+        mReleasedCount++;
+    }
+
+    public boolean isReleased(Object item) {
+        return layerOf(item) >= 0 && mReleased[((Slot) item).getStackSlot()];
+    }
+
+    /**
+     * 最早松手的卡片，没有时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public T peekReleased() {
+        return mReleasedCount == 0 ? null : (T) mItems[mReleasedQueue[mReleasedHead]];
+    }
+
+    /**
+     * 移出最早松手的卡片
+     */
+    @SuppressWarnings("unchecked")
+    public T pollReleased() {
+        if (mReleasedCount == 0) {
+            return null;
+        }
+        int slot = mReleasedQueue[mReleasedHead];
+        mReleasedHead = (mReleasedHead + 1) % mReleasedQueue.length;
+        mReleasedCount--;
+        mReleased[slot] = false;
+        return (T) mItems[slot];
+    }
+
+    public int releasedCount() {
+        return mReleasedCount;
+    }
+
+    private int physicalSlot(int layer) {
+        return (mHead + layer) % mItems.length;
+    }
+}
@@ -0,0 +1,740 @@
+package com.stone.card.core;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * 卡片栈的状态机，不依赖 Android
+ * <p>
+ * 负责当前显示的位置、每一层绑定的数据、卡片是否可见、飞出中的卡片、按钮锁，
+ * 以及数据变化时卡片栈的调整。所有 View 相关的操作都通过 {@link Host} 回调，
+ * 飞出的结束时间由 {@link FrameClock} 驱动，所以可以脱离 Android 在 JVM 上做压力测试。
+ * 除了 {@link #reset(int)} 改变层数之外不会分配任何对象。
+ *
+ * @param <T> 卡片类型
+ * @author im_dsd
+ */
+public final class DeckEngine<T extends CardStack.Slot> {
+    public static final long NO_ID = -1;
+
+    /**
+     * 卡片栈的数据来源和 View 操作
+     *
+     * @param <T> 卡片类型
+     */
+    public interface Host<T> {
+        int getItemCount();
+
+        boolean hasStableIds();
+
+        long getItemId(int index);
+
+        Object getItem(int index);
+
+        /**
+         * 给卡片绑定 index 对应的数据
+         *
+         * @return 绑定了数据的卡片，一般就是 card；card 的类型与数据不一致时返回代替它的另一张卡片，层级不变
+         */
+        T bindCard(T card, int index);
+
+        /**
+         * 卡片没有数据可以显示，或者等待绑定时还是之前的内容，隐藏起来
+         */
+        void hideCard(T card);
+
+        /**
+         * 显示卡片
+         *
+         * @param fadeOrder 渐显的先后顺序，-1 表示最底层备用的卡片，直接显示但透明
+         */
+        void revealCard(T card, int fadeOrder);
+
+        /**
+         * 飞出的卡片回到最底层，调用时卡片栈已经完成了轮转
+         *
+         * @return 放在最底层的卡片，一般就是 card；需要保留 card 时返回另一张卡片代替它
+         */
+        T recycleToBottom(T card);
+
+        /**
+         * 飞出结束，卡片栈已经完成了重新排序
+         */
+        void onFlyFinished(T card);
+
+        /**
+         * 新的卡片显示在顶层
+         */
+        void onShow(int index);
+
+        void onStackWindowChanged(int showingIndex, int stackDepth);
+    }
+
+    private final Host<T> mHost;
+    private final FrameClock mClock;
+    private final CardStack<T> mStack = new CardStack<>();
+    private final Runnable mFrame = new Runnable() {
+        @Override
+        public void run() {
+            doFrame();
+        }
+    };
+    /**
+     * 以下数组都按卡片在 {@link CardStack} 中的位置存放，卡片轮转时位置不变
+     */
+    private boolean[] mVisible = new boolean[0];
+    private long[] mBoundIds = new long[0];
+    /**
+     * 可见但还没有绑定数据的卡片，见 {@link #bindAll(int)}。绑定之前通过 {@link Host#hideCard(Object)} 隐藏，
+     * 绑定之后再显示
+     */
+    private boolean[] mBindPending = new boolean[0];
+    private int mPendingCount = 0;
+    private long[] mFlyStartNanos = new long[0];
+    private long[] mFlyDurationNanos = new long[0];
+    private int mFlightCount = 0;
+    private boolean mFrameScheduled = false;
+    /**
+     * 当前显示在顶层的数据 index，所有卡片划走后等于数据总数
+     */
+    private int mShowing = 0;
+    private boolean mBtnLocked = false;
+    /**
+     * 没有稳定 id 时，通过第一条数据判断数据是否被整体替换
+     */
+    private WeakReference<Object> mSavedFirstItem;
+
+    public DeckEngine(Host<T> host, FrameClock clock) {
+        mHost = host;
+        mClock = clock;
+    }
+
+    /**
+     * 清空并设置层数，之后通过 {@link #addCard(Object)} 从顶到底加入卡片
+     */
+    public void reset(int depth) {
+        clear();
+        mStack.reset(depth);
+        if (mVisible.length != depth) {
+            mVisible = new boolean[depth];
+            mBoundIds = new long[depth];
+            mBindPending = new boolean[depth];
+            mFlyStartNanos = new long[depth];
+            mFlyDurationNanos = new long[depth];
+        }
+    }
+
+    /**
+     * 移出所有卡片，飞出中的卡片直接丢弃
+     */
+    public void clear() {
+        mStack.clear();
+        for (int i = 0; i < mFlyDurationNanos.length; i++) {
+            mFlyDurationNanos[i] = 0;
+        }
+        for (int i = 0; i < mBindPending.length; i++) {
+            mBindPending[i] = false;
+        }
+        mPendingCount = 0;
+        mFlightCount = 0;
+        mFrameScheduled = false;
+        mBtnLocked = false;
+    }
+
+    /**
+     * 在最底层加入一张可见的卡片
+     */
+    public void addCard(T card) {
+        mStack.add(card);
+        int slot = card.getStackSlot();
+        mVisible[slot] = true;
+        mBoundIds[slot] = NO_ID;
+    }
+
+    /**
+     * 从当前显示的位置开始给每一层绑定数据，没有数据的卡片隐藏
+     */
+    public void bindAll() {
+        bindAll(Integer.MAX_VALUE);
+    }
+
+    /**
+     * 只给前 eagerLayers 层绑定数据，更深的卡片标记为等待绑定，之后通过 {@link #bindPending(int)} 补上。
+     * 等待绑定的卡片成为前面的卡片（见 {@link #getFront()}）之前一定会被绑定
+     */
+    public void bindAll(int eagerLayers) {
+        int count = mHost.getItemCount();
+        if (count > 0) {
+            saveFirstItem(mHost.getItem(0));
+        }
+        for (int i = 0; i < mStack.size(); i++) {
+            T card = mStack.get(i);
+            int index = mShowing + i;
+            if (index >= count) {
+                setHidden(card);
+            } else if (i < eagerLayers) {
+                bind(card, index);
+            } else {
+                setPending(card);
+            }
+        }
+        mHost.onStackWindowChanged(mShowing, mStack.size());
+    }
+
+    /**
+     * 给不深于 maxLayer 层、等待绑定的卡片绑定数据，从上到下
+     *
+     * @return 绑定的卡片数量
+     */
+    public int bindPending(int maxLayer) {
+        if (mPendingCount == 0) {
+            return 0;
+        }
+        int bound = 0;
+        int count = mHost.getItemCount();
+        int last = Math.min(maxLayer, mStack.size() - 1);
+        for (int i = 0; i <= last; i++) {
+            T card = mStack.get(i);
+            if (!mBindPending[card.getStackSlot()]) {
+                continue;
+            }
+            int index = mShowing + i;
+            if (index < count) {
+                bind(card, index);
+                bound++;
+            } else {
+                setHidden(card);
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * 只给最上面一张等待绑定的卡片绑定数据，用于分帧绑定
+     *
+     * @return 绑定的卡片所在的层，没有等待绑定的卡片时返回 -1
+     */
+    public int bindNextPending() {
+        if (mPendingCount == 0) {
+            return -1;
+        }
+        for (int i = 0; i < mStack.size(); i++) {
+            if (mBindPending[mStack.get(i).getStackSlot()]) {
+                bindPending(i);
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean hasPendingBind() {
+        return mPendingCount > 0;
+    }
+
+    /**
+     * 恢复保存的位置，在 {@link #bindAll()} 之前调用。有稳定 id 时优先按 id 找回，
+     * 数据重新加载后同一条数据的位置可能已经变化
+     */
+    public void restore(int showing, long topItemId) {
+        int count = mHost.getItemCount();
+        int index = -1;
+        if (topItemId != NO_ID && mHost.hasStableIds()) {
+            index = findIndexById(topItemId, showing, count);
+        }
+        mShowing = index >= 0 ? index : Math.max(0, Math.min(showing, count));
+    }
+
+    public CardStack<T> getStack() {
+        return mStack;
+    }
+
+    public int getShowing() {
+        return mShowing;
+    }
+
+    /**
+     * 还可以划走的卡片数量，不包括飞出中的卡片
+     */
+    public int getSwipeableCount() {
+        return Math.max(0, mHost.getItemCount() - mShowing - mStack.releasedCount());
+    }
+
+    public void setShowing(int showing) {
+        mShowing = showing;
+    }
+
+    public boolean isBtnLocked() {
+        return mBtnLocked;
+    }
+
+    /**
+     * 按钮触发的飞出开始后锁定，飞出结束后解锁
+     */
+    public void lockButtons() {
+        mBtnLocked = true;
+    }
+
+    public boolean isVisible(T card) {
+        return mStack.layerOf(card) >= 0 && mVisible[card.getStackSlot()];
+    }
+
+    /**
+     * 卡片绑定的数据 id，没有稳定 id 时返回 {@link #NO_ID}
+     */
+    public long getBoundItemId(T card) {
+        return mStack.layerOf(card) >= 0 ? mBoundIds[card.getStackSlot()] : NO_ID;
+    }
+
+    /**
+     * 飞出中的卡片之后的第一张卡片，可以拖动和飞出；所有卡片都在飞出中时返回 null。
+     * 飞出中的卡片总是按飞出的顺序排在栈顶
+     */
+    public T getFront() {
+        int front = mStack.releasedCount();
+        return front < mStack.size() ? mStack.get(front) : null;
+    }
+
+    /**
+     * 前面的卡片（见 {@link #getFront()}）是否可以飞出：有数据并且可见
+     */
+    public boolean canRelease() {
+        T front = getFront();
+        return front != null && isVisible(front);
+    }
+
+    /**
+     * 卡片开始飞出，从下一帧开始计时，duration 毫秒后完成重新排序。只有前面的卡片可以飞出，
+     * 前一张还在飞出时也可以
+     */
+    public void release(T card, int durationMs) {
+        if (card == null || card != getFront()) {
+            return;
+        }
+        mStack.markReleased(card);
+        int slot = card.getStackSlot();
+        mFlyStartNanos[slot] = -1;
+        mFlyDurationNanos[slot] = Math.max(1, durationMs) * 1000000L;
+        mFlightCount++;
+        scheduleFrame();
+    }
+
+    /**
+     * 卡片飞出结束。按飞出的先后顺序回到最底层并解除按钮锁，更早飞出的卡片还没有结束时先记下，
+     * 等它结束后一起处理
+     */
+    public void onFlyFinished(T card) {
+        if (!mStack.isReleased(card)) {
+            return;
+        }
+        clearFlight(card.getStackSlot());
+        T earliest = mStack.peekReleased();
+        while (earliest != null && mFlyDurationNanos[earliest.getStackSlot()] == 0) {
+            advance();
+            mBtnLocked = false;
+            mHost.onFlyFinished(earliest);
+            earliest = mStack.peekReleased();
+        }
+    }
+
+    public boolean hasReleased() {
+        return mStack.releasedCount() > 0;
+    }
+
+    /**
+     * 最早飞出的卡片回到最底层并绑定新的数据，没有飞出的卡片时返回 false
+     */
+    public boolean advance() {
+        T card = mStack.pollReleased();
+        if (card == null) {
+            return false;
+        }
+        clearFlight(card.getStackSlot());
+        mStack.rotate();
+        T bottom = mHost.recycleToBottom(card);
+        if (bottom != card) {
+            mStack.replace(card, bottom);
+            mVisible[bottom.getStackSlot()] = true;
+            card = bottom;
+        }
+
+        int newIndex = mShowing + mStack.size();
+        if (newIndex < mHost.getItemCount()) {
+            bind(card, newIndex);
+        } else {
+            setHidden(card);
+        }
+
+        // 最后一张卡片消失后 mShowing 等于数据总数
+        mShowing++;
+        bindPending(mStack.releasedCount());
+        mHost.onStackWindowChanged(mShowing, mStack.size());
+        if (mShowing < mHost.getItemCount()) {
+            mHost.onShow(mShowing);
+        }
+        return true;
+    }
+
+    /**
+     * 不播放飞出动画，直接跳过从顶层开始的 count 张卡片。不管跳过多少张，每一层只重新绑定一次
+     *
+     * @return 实际跳过的数量，超出数据范围的部分不算，还有飞出中的卡片时返回 0
+     */
+    public int skip(int count) {
+        if (mStack.isEmpty() || hasReleased()) {
+            return 0;
+        }
+        int itemCount = mHost.getItemCount();
+        count = Math.min(count, itemCount - mShowing);
+        if (count <= 0) {
+            return 0;
+        }
+        mShowing += count;
+        int depth = mStack.size();
+        for (int i = 0; i < depth; i++) {
+            T card = mStack.get(i);
+            int index = mShowing + i;
+            if (index >= itemCount) {
+                setHidden(card);
+                continue;
+            }
+            card = bind(card, index);
+            if (!isVisible(card)) {
+                mVisible[card.getStackSlot()] = true;
+                mHost.revealCard(card, i == depth - 1 ? -1 : i);
+            }
+        }
+        mHost.onStackWindowChanged(mShowing, depth);
+        if (mShowing < itemCount) {
+            mHost.onShow(mShowing);
+        }
+        return count;
+    }
+
+    /**
+     * 数据变化时所有飞出中的卡片直接回到最底层，并解除按钮锁
+     *
+     * @return 回到最底层的卡片数量
+     */
+    private int advanceAll() {
+        int count = 0;
+        while (advance()) {
+            count++;
+        }
+        if (count > 0) {
+            mBtnLocked = false;
+        }
+        return count;
+    }
+
+    /**
+     * 上一张划走的卡片回到顶层，原来最底层的卡片移出卡片栈。调用前先用 {@link #advance()}
+     * 完成飞出中的卡片，调用方负责让卡片可见。重新绑定时 host 可能换成另一张卡片，之后以栈顶为准
+     *
+     * @param card      回到顶层的卡片，可以是当前最底层的卡片
+     * @param needsBind 为 false 时 card 已经绑定了上一张的数据，不再重新绑定
+     * @return 移出卡片栈的卡片，card 就是最底层的卡片、已经没有上一张或者还有飞出中的卡片时返回 null
+     */
+    public T rewind(T card, boolean needsBind) {
+        if (mShowing == 0 || mStack.isEmpty() || hasReleased()) {
+            return null;
+        }
+        T displaced = mStack.pushTop(card);
+        mShowing--;
+        // 回来的卡片占用了被移出的卡片的位置
+        clearPending(card.getStackSlot());
+        mVisible[card.getStackSlot()] = true;
+        if (needsBind) {
+            bind(card, mShowing);
+        } else {
+            mBoundIds[card.getStackSlot()] = mHost.hasStableIds() ? mHost.getItemId(mShowing) : NO_ID;
+        }
+        mHost.onStackWindowChanged(mShowing, mStack.size());
+        mHost.onShow(mShowing);
+        return displaced;
+    }
+
+    /**
+     * 数据整体变化。有稳定 id 时按顶层卡片的 id 找回当前位置，
+     * 否则第一条数据变化时认为数据被整体替换，从头开始显示
+     */
+    public void onDataSetChanged() {
+        if (mStack.isEmpty()) {
+            // 还没有绑定过，等 bindAll 时一起处理
+            return;
+        }
+        advanceAll();
+
+        if (mHost.hasStableIds()) {
+            remapShowingById();
+            rebindSlots(0, false);
+            mHost.onStackWindowChanged(mShowing, mStack.size());
+            return;
+        }
+
+        boolean reset = false;
+        if (mHost.getItemCount() > 0) {
+            Object firstObj = mHost.getItem(0);
+            if (null == mSavedFirstItem) {
+                // 此前就没有数据，需要保存第一条数据
+                saveFirstItem(firstObj);
+                mShowing = 0;
+            } else if (firstObj != mSavedFirstItem.get()) {
+                // 如果第一条数据不等的话，需要重置
+                mShowing = 0;
+                reset = true;
+                saveFirstItem(firstObj);
+            }
+        } else {
+            // 数据被清空，之后的数据从头开始显示
+            mSavedFirstItem = null;
+            mShowing = 0;
+        }
+
+        rebindSlots(0, reset);
+        mHost.onStackWindowChanged(mShowing, mStack.size());
+    }
+
+    /**
+     * 局部变化只处理卡片栈范围 [showing, showing + depth) 之内的卡片
+     */
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        int depth = mStack.size();
+        int from = Math.max(positionStart, mShowing);
+        int to = Math.min(positionStart + itemCount, mShowing + depth);
+        if (mStack.isEmpty() || from >= to) {
+            // 不在卡片栈之内，不需要处理
+            return;
+        }
+        advanceAll();
+        from = Math.max(from, mShowing);
+        to = Math.min(to, mShowing + depth);
+        for (int index = from; index < to; index++) {
+            T card = mStack.get(index - mShowing);
+            if (isVisible(card)) {
+                bind(card, index);
+            }
+        }
+    }
+
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        if (mStack.isEmpty()) {
+            return;
+        }
+        if (positionStart >= mShowing + mStack.size()) {
+            // 在卡片栈之后追加，只需要提前准备数据
+            mHost.onStackWindowChanged(mShowing, mStack.size());
+            return;
+        }
+        int advanced = advanceAll();
+        if (positionStart < mShowing) {
+            // 插入在已经划走的卡片之间，当前显示的卡片不变，只是 index 后移
+            mShowing += itemCount;
+            rebindRecycled(advanced);
+        } else {
+            rebindSlots(positionStart - mShowing, false);
+        }
+        mHost.onStackWindowChanged(mShowing, mStack.size());
+    }
+
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        if (mStack.isEmpty() || positionStart >= mShowing + mStack.size()) {
+            return;
+        }
+        int advanced = advanceAll();
+        if (positionStart + itemCount <= mShowing) {
+            // 删除的都是已经划走的卡片
+            mShowing -= itemCount;
+            rebindRecycled(advanced);
+        } else if (positionStart < mShowing) {
+            mShowing = positionStart;
+            rebindSlots(0, false);
+        } else {
+            rebindSlots(positionStart - mShowing, false);
+        }
+        mHost.onStackWindowChanged(mShowing, mStack.size());
+    }
+
+    /**
+     * 数据变化时飞出中的卡片先完成了重新排序，回到底层的卡片是按变化之前的位置绑定的，需要重新绑定
+     */
+    private void rebindRecycled(int advanced) {
+        if (advanced > 0) {
+            rebindSlots(mStack.size() - advanced, false);
+        }
+    }
+
+    /**
+     * 推进一帧，飞出时间到了的卡片完成重新排序
+     */
+    void doFrame() {
+        mFrameScheduled = false;
+        if (mFlightCount == 0) {
+            return;
+        }
+        long now = mClock.getFrameTimeNanos();
+        for (int slot = 0; slot < mFlyDurationNanos.length; slot++) {
+            if (mFlyDurationNanos[slot] > 0 && mFlyStartNanos[slot] < 0) {
+                mFlyStartNanos[slot] = now;
+            }
+        }
+        // 按飞出的先后顺序完成，和卡片栈的重新排序一致
+        T card = mStack.peekReleased();
+        while (card != null && isFlightDone(card.getStackSlot(), now)) {
+            onFlyFinished(card);
+            card = mStack.peekReleased();
+        }
+        if (mFlightCount > 0) {
+            scheduleFrame();
+        }
+    }
+
+    private boolean isFlightDone(int slot, long now) {
+        if (mFlyDurationNanos[slot] == 0) {
+            return true;
+        }
+        // 在这一帧的回调中才开始飞出的卡片还没有开始计时
+        return mFlyStartNanos[slot] >= 0 && now - mFlyStartNanos[slot] >= mFlyDurationNanos[slot];
+    }
+
+    private void clearFlight(int slot) {
+        if (mFlyDurationNanos[slot] > 0) {
+            mFlyDurationNanos[slot] = 0;
+            mFlightCount--;
+        }
+    }
+
+    private void scheduleFrame() {
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mClock.scheduleFrame(mFrame);
+        }
+    }
+
+    /**
+     * @return 绑定了数据的卡片，host 换成了另一张卡片时它已经在栈中代替了 card
+     */
+    private T bind(T card, int index) {
+        int slot = card.getStackSlot();
+        boolean pending = mBindPending[slot];
+        clearPending(slot);
+        mBoundIds[slot] = mHost.hasStableIds() ? mHost.getItemId(index) : NO_ID;
+        T bound = mHost.bindCard(card, index);
+        if (bound != card) {
+            mStack.replace(card, bound);
+        }
+        if (pending) {
+            int layer = mStack.layerOf(bound);
+            mHost.revealCard(bound, layer == mStack.size() - 1 ? -1 : 0);
+        }
+        return bound;
+    }
+
+    private void setHidden(T card) {
+        clearPending(card.getStackSlot());
+        mVisible[card.getStackSlot()] = false;
+        mHost.hideCard(card);
+    }
+
+    private void setPending(T card) {
+        int slot = card.getStackSlot();
+        if (!mBindPending[slot]) {
+            mBindPending[slot] = true;
+            mPendingCount++;
+        }
+        // 还没有绑定，不能按 id 认为是同一条数据
+        mBoundIds[slot] = NO_ID;
+        // 显示的还是之前的数据，比如重新 attach 或者换了 adapter
+        mHost.hideCard(card);
+    }
+
+    private void clearPending(int slot) {
+        if (mBindPending[slot]) {
+            mBindPending[slot] = false;
+            mPendingCount--;
+        }
+    }
+
+    private void saveFirstItem(Object firstItem) {
+        mSavedFirstItem = new WeakReference<>(firstItem);
+    }
+
+    /**
+     * 数据变化后按顶层卡片的 id 重新定位当前显示的位置，找不到时保持原来的位置
+     */
+    private void remapShowingById() {
+        int count = mHost.getItemCount();
+        T top = mStack.top();
+        long topId = getBoundItemId(top);
+        if (isVisible(top) && topId != NO_ID) {
+            int index = findIndexById(topId, mShowing, count);
+            if (index >= 0) {
+                mShowing = index;
+                return;
+            }
+        }
+        mShowing = Math.min(mShowing, count);
+    }
+
+    /**
+     * 从 hint 开始向两侧查找 id，数据一般只在当前位置附近变化
+     */
+    private int findIndexById(long itemId, int hint, int count) {
+        hint = Math.min(hint, count - 1);
+        for (int distance = 0; distance < count; distance++) {
+            int after = hint + distance;
+            int before = hint - distance;
+            if (after >= count && before < 0) {
+                break;
+            }
+            if (after < count && mHost.getItemId(after) == itemId) {
+                return after;
+            }
+            if (distance > 0 && before >= 0 && mHost.getItemId(before) == itemId) {
+                return before;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 从 fromSlot 层开始重新绑定数据，新出现的卡片渐显
+     *
+     * @param reset 为 true 时已经显示的卡片也重新渐显
+     */
+    private void rebindSlots(int fromSlot, boolean reset) {
+        if (!isVisible(mStack.top())) {
+            // 顶层卡片不可见，说明此前的卡片已经全部划走，需要从顶层开始绑定
+            fromSlot = 0;
+        }
+        int depth = mStack.size();
+        int count = mHost.getItemCount();
+        boolean stableIds = mHost.hasStableIds();
+        int fadeOrder = 0;
+        for (int i = fromSlot; i < depth; i++) {
+            T card = mStack.get(i);
+            int index = mShowing + i;
+            if (index >= count) {
+                setHidden(card);
+                continue;
+            }
+            boolean visible = isVisible(card);
+            if (stableIds && !reset && visible && getBoundItemId(card) == mHost.getItemId(index)) {
+                // 绑定的还是同一条数据，不需要重新绑定
+                continue;
+            }
+            card = bind(card, index);
+            if (visible) {
+                if (stableIds && i == 0) {
+                    // 顶层卡片换成了另一条数据
+                    mHost.onShow(mShowing);
+                }
+                if (!reset) {
+                    continue;
+                }
+            } else if (i == 0) {
+                mHost.onShow(mShowing);
+            }
+            mVisible[card.getStackSlot()] = true;
+            mHost.revealCard(card, i == depth - 1 ? -1 : fadeOrder++);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.stone.card.core;
+
+/**
+ * 驱动 {@link DeckEngine} 的帧时钟
+ * <p>
+ * Android 上由卡片动画使用的同一个帧回调驱动，JVM 上可以用手动推进的时钟做模拟。
+ *
+ * @author im_dsd
+ */
+public interface FrameClock {
+    /**
+     * 在下一帧调用一次 frame，同一帧内重复调用只需要回调一次
+     */
+    void scheduleFrame(Runnable frame);
+
+    /**
+     * 当前帧的时间，纳秒，只在 frame 回调中调用
+     */
+    long getFrameTimeNanos();
+}
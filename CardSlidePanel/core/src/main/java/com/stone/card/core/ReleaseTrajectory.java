@@ -0,0 +1,124 @@
+package com.stone.card.core;
+
+/**
+ * 松手后卡片去向的计算，不依赖 Android
+ * <p>
+ * 根据松手时的速度和位移判断卡片是飞向两侧还是回到中间，并按松手时的斜率推算飞出的终点。
+ * 对象本身保存面板的几何参数和最近一次的计算结果，计算过程不分配对象。
+ *
+ * @author im_dsd
+ */
+public final class ReleaseTrajectory {
+    /**
+     * 回到中间，不飞出
+     */
+    public static final int FLY_NONE = -1;
+    public static final int FLY_LEFT = 0;
+    public static final int FLY_RIGHT = 1;
+
+    public static final int X_VEL_THRESHOLD = 800;
+    public static final int X_DISTANCE_THRESHOLD = 300;
+    /**
+     * yvel < xvel * XY_RATE 时才允许飞出，斜率太高视为上下拖动
+     */
+    public static final float XY_RATE = 3f;
+    /**
+     * 飞出动画的时长，与 ViewDragHelper 没有初速度时 settle 的计算方式一致
+     */
+    public static final int FLY_BASE_DURATION = 256;
+    public static final int FLY_MAX_DURATION = 600;
+    public static final int FLY_DRAG_RANGE = 256;
+
+    private int mInitX;
+    private int mInitY;
+    private int mPanelWidth;
+    private int mPanelHeight;
+    private int mChildWidth;
+
+    private int mFinalX;
+    private int mFinalY;
+
+    /**
+     * 设置面板的几何参数
+     *
+     * @param initX      顶层卡片初始的 x 位置
+     * @param initY      顶层卡片初始的 y 位置
+     * @param childWidth 卡片宽度
+     */
+    public void setGeometry(int initX, int initY, int panelWidth, int panelHeight, int childWidth) {
+        mInitX = initX;
+        mInitY = initY;
+        mPanelWidth = panelWidth;
+        mPanelHeight = panelHeight;
+        mChildWidth = childWidth;
+    }
+
+    /**
+     * 计算松手后卡片的终点，结果通过 {@link #getFinalX()}、{@link #getFinalY()} 获取
+     *
+     * @param left 松手时卡片的 x 位置
+     * @param top  松手时卡片的 y 位置
+     * @param xvel x 方向的速度，正值向右
+     * @param yvel y 方向的速度，正值向下
+     * @return {@link #FLY_NONE}、{@link #FLY_LEFT} 或 {@link #FLY_RIGHT}
+     */
+    public int compute(int left, int top, float xvel, float yvel) {
+        int finalX = mInitX;
+        int finalY = mInitY;
+        int flyType = FLY_NONE;
+
+        // 下面这一坨计算finalX和finalY，要读懂代码需要建立一个比较清晰的数学模型才能理解，不信拉倒
+        int dx = left - mInitX;
+        int dy = top - mInitY;
+
+        if (xvel > X_VEL_THRESHOLD && Math.abs(yvel) < xvel * XY_RATE) {
+            // x正方向的速度足够大，向右滑动消失
+            finalX = mPanelWidth;
+            finalY = (int) (yvel * (mChildWidth + left) / xvel + top);
+            flyType = FLY_RIGHT;
+        } else if (xvel < -X_VEL_THRESHOLD && Math.abs(yvel) < -xvel * XY_RATE) {
+            // x负方向的速度足够大，向左滑动消失
+            finalX = -mChildWidth;
+            finalY = (int) (yvel * (mChildWidth + left) / (-xvel) + top);
+            flyType = FLY_LEFT;
+        } else if (dx > X_DISTANCE_THRESHOLD && Math.abs(dy) < dx * XY_RATE) {
+            // x正方向的位移足够大，向右滑动消失
+            finalX = mPanelWidth;
+            finalY = dy * (mChildWidth + mInitX) / dx + mInitY;
+            flyType = FLY_RIGHT;
+        } else if (dx < -X_DISTANCE_THRESHOLD && Math.abs(dy) < -dx * XY_RATE) {
+            // x负方向的位移足够大，向左滑动消失
+            finalX = -mChildWidth;
+            finalY = dy * (mChildWidth + mInitX) / (-dx) + mInitY;
+            flyType = FLY_LEFT;
+        }
+        // 如果斜率太高，就折中处理
+        if (finalY > mPanelHeight) {
+            finalY = mPanelHeight;
+        } else if (finalY < -mPanelHeight / 2) {
+            finalY = -mPanelHeight / 2;
+        }
+
+        mFinalX = finalX;
+        mFinalY = finalY;
+        return flyType;
+    }
+
+    public int getFinalX() {
+        return mFinalX;
+    }
+
+    public int getFinalY() {
+        return mFinalY;
+    }
+
+    /**
+     * 飞出动画的时长，毫秒
+     *
+     * @param dx 需要飞过的水平距离
+     */
+    public static int flyDuration(int dx) {
+        int duration = (int) ((Math.abs(dx) / (float) FLY_DRAG_RANGE + 1) * FLY_BASE_DURATION);
+        return Math.min(duration, FLY_MAX_DURATION);
+    }
+}
@@ -0,0 +1,64 @@
+package com.stone.card.core;
+
+/**
+ * 顶层卡片拖动时下层卡片的联动计算，不依赖 Android
+ * <p>
+ * 顶层卡片离开初始位置越远，下层卡片越接近上一层的位置和缩放；越靠下的卡片联动得越晚。
+ *
+ * @author im_dsd
+ */
+public final class StackLinkage {
+    /**
+     * view 叠加缩放的步长
+     */
+    public static final float SCALE_STEP = 0.08f;
+    /**
+     * 水平距离 + 垂直距离达到这个值时第一层联动完成
+     */
+    public static final int MAX_SLIDE_DISTANCE = 500;
+    /**
+     * 相邻两层卡片联动的延迟比例
+     */
+    public static final float RATE_STEP = 0.1f;
+
+    private StackLinkage() {
+    }
+
+    /**
+     * 顶层卡片偏离初始位置的比例，1 表示第一层联动完成
+     */
+    public static float dragRate(int dx, int dy) {
+        return (Math.abs(dx) + Math.abs(dy)) / (float) MAX_SLIDE_DISTANCE;
+    }
+
+    /**
+     * 第 layer 层的联动比例，取值 [0, 1]
+     */
+    public static float layerRate(float dragRate, int layer) {
+        float layerRate = dragRate - RATE_STEP * (layer - 1);
+        if (layerRate < 0) {
+            return 0;
+        } else if (layerRate > 1) {
+            return 1;
+        }
+        return layerRate;
+    }
+
+    /**
+     * 第 layer 层卡片相对顶层卡片的垂直偏移，layerRate 为 1 时与上一层重合
+     */
+    public static int layerOffset(int layer, float layerRate, int yOffsetStep) {
+        int initPosY = yOffsetStep * layer;
+        int nextPosY = yOffsetStep * (layer - 1);
+        return (int) (initPosY + (nextPosY - initPosY) * layerRate);
+    }
+
+    /**
+     * 第 layer 层卡片的缩放，layerRate 为 1 时与上一层相同
+     */
+    public static float layerScale(int layer, float layerRate) {
+        float initScale = 1 - SCALE_STEP * layer;
+        float nextScale = 1 - SCALE_STEP * (layer - 1);
+        return initScale + (nextScale - initScale) * layerRate;
+    }
+}
@@ -0,0 +1,44 @@
+package com.stone.card.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 同样大小的图片解码出来的内存必须能被下一次解码复用，稳定滑动时才不会分配新的图片内存
+ */
+public class BitmapReuseTest {
+
+    @Test
+    public void sameSizeDecode_fitsFreedAllocation() {
+        int width = 1080;
+        int height = 1440;
+        long freed = (long) width * height * BitmapReuse.ARGB_8888_BYTES;
+        assertTrue(BitmapReuse.fitsAllocation(freed, width, height, BitmapReuse.ARGB_8888_BYTES));
+    }
+
+    @Test
+    public void largerDecode_doesNotFit() {
+        long freed = 100L * 100 * BitmapReuse.ARGB_8888_BYTES;
+        assertFalse(BitmapReuse.fitsAllocation(freed, 101, 100, BitmapReuse.ARGB_8888_BYTES));
+        assertTrue(BitmapReuse.fitsAllocation(freed, 99, 100, BitmapReuse.ARGB_8888_BYTES));
+    }
+
+    @Test
+    public void fitsExact_requiresSameSizeWithoutScaling() {
+        assertTrue(BitmapReuse.fitsExact(100, 200, 100, 200, true));
+        assertFalse(BitmapReuse.fitsExact(100, 200, 100, 200, false));
+        assertFalse(BitmapReuse.fitsExact(100, 201, 100, 200, true));
+    }
+
+    @Test
+    public void sampleSize_staysAtLeastTargetSize() {
+        assertEquals(1, BitmapReuse.sampleSize(1000, 1000, 600, 600));
+        assertEquals(2, BitmapReuse.sampleSize(2000, 2000, 600, 600));
+        assertEquals(4, BitmapReuse.sampleSize(4000, 3000, 600, 600));
+        // 有一边不够时不再采样
+        assertEquals(1, BitmapReuse.sampleSize(4000, 1000, 600, 600));
+    }
+}
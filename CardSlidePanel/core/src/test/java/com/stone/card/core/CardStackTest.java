@@ -0,0 +1,165 @@
+package com.stone.card.core;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 卡片栈的层级维护，以及拖拽过程中不分配对象
+ */
+public class CardStackTest {
+    private static final int DEPTH = 4;
+    private static final int FRAMES = 1000;
+    /**
+     * 每拖拽这么多帧就松手飞出一张卡片
+     */
+    private static final int FRAMES_PER_SWIPE = 50;
+
+    private CardStack<FakeCard> mStack;
+    private FakeCard[] mCards;
+
+    @Before
+    public void setUp() {
+        mStack = new CardStack<>();
+        mStack.reset(DEPTH);
+        mCards = new FakeCard[DEPTH];
+        for (int i = 0; i < DEPTH; i++) {
+            mCards[i] = new FakeCard();
+            mStack.add(mCards[i]);
+        }
+    }
+
+    @Test
+    public void layerOf_followsRotation() {
+        for (int i = 0; i < DEPTH; i++) {
+            assertEquals(i, mStack.layerOf(mCards[i]));
+        }
+        assertSame(mCards[0], mStack.rotate());
+        assertSame(mCards[1], mStack.top());
+        assertSame(mCards[0], mStack.bottom());
+        assertEquals(DEPTH - 1, mStack.layerOf(mCards[0]));
+        assertEquals(0, mStack.layerOf(mCards[1]));
+        assertEquals(-1, mStack.layerOf(new FakeCard()));
+    }
+
+    @Test
+    public void pushTop_undoesRotation() {
+        mStack.rotate();
+        assertNull(mStack.pushTop(mCards[0]));
+        for (int i = 0; i < DEPTH; i++) {
+            assertEquals(i, mStack.layerOf(mCards[i]));
+        }
+    }
+
+    @Test
+    public void pushTop_displacesBottom() {
+        FakeCard card = new FakeCard();
+        assertSame(mCards[DEPTH - 1], mStack.pushTop(card));
+        assertSame(card, mStack.top());
+        assertEquals(1, mStack.layerOf(mCards[0]));
+        assertSame(mCards[DEPTH - 2], mStack.bottom());
+        assertEquals(-1, mCards[DEPTH - 1].getStackSlot());
+    }
+
+    @Test
+    public void replace_keepsLayer() {
+        FakeCard card = new FakeCard();
+        mStack.replace(mCards[1], card);
+        assertEquals(1, mStack.layerOf(card));
+        assertEquals(-1, mStack.layerOf(mCards[1]));
+    }
+
+    @Test
+    public void released_isQueuedOnce() {
+        mStack.markReleased(mCards[0]);
+        mStack.markReleased(mCards[0]);
+        assertTrue(mStack.isReleased(mCards[0]));
+        assertFalse(mStack.isReleased(mCards[1]));
+        assertEquals(1, mStack.releasedCount());
+        assertSame(mCards[0], mStack.peekReleased());
+        assertSame(mCards[0], mStack.pollReleased());
+        assertNull(mStack.pollReleased());
+        assertFalse(mStack.isReleased(mCards[0]));
+    }
+
+    @Test
+    public void clear_detachesCards() {
+        mStack.clear();
+        assertTrue(mStack.isEmpty());
+        assertEquals(-1, mCards[0].getStackSlot());
+        assertEquals(-1, mStack.layerOf(mCards[0]));
+    }
+
+    @Test
+    public void drag_doesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // 预热，排除类加载和 JIT 的影响
+        for (int i = 0; i < 20; i++) {
+            simulateDrag();
+        }
+        // 两次读取之间什么都不做，得到读取本身的分配量
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+        long overhead = after - before;
+
+        before = threadBean.getThreadAllocatedBytes(threadId);
+        int checksum = simulateDrag();
+        after = threadBean.getThreadAllocatedBytes(threadId);
+
+        assertTrue(checksum != 0);
+        assertEquals(0, Math.max(0, after - before - overhead));
+    }
+
+    /**
+     * 模拟 {@link #FRAMES} 帧拖拽：每帧查找拖拽卡片所在的层并联动下面的卡片，
+     * 松手后等待飞出、重新排序
+     */
+    private int simulateDrag() {
+        int checksum = 0;
+        for (int frame = 1; frame <= FRAMES; frame++) {
+            FakeCard dragged = mStack.top();
+            int layer = mStack.layerOf(dragged);
+            for (int i = 1; i < mStack.size() - layer - 1; i++) {
+                checksum += mStack.get(layer + i).getStackSlot() + 1;
+            }
+            checksum += mStack.bottom().getStackSlot();
+            if (frame % FRAMES_PER_SWIPE == 0 && !mStack.isReleased(dragged)) {
+                mStack.markReleased(dragged);
+                if (mStack.peekReleased() == dragged) {
+                    mStack.pollReleased();
+                    mStack.rotate();
+                }
+            }
+        }
+        return checksum;
+    }
+
+    private static class FakeCard implements CardStack.Slot {
+        private int mSlot = -1;
+
+        @Override
+        public int getStackSlot() {
+            return mSlot;
+        }
+
+        @Override
+        public void setStackSlot(int slot) {
+            mSlot = slot;
+        }
+    }
+}
@@ -0,0 +1,668 @@
+package com.stone.card.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在 JVM 上驱动 {@link DeckEngine}：模拟时钟推进飞出，随机的滑动、追加、插入、删除、整体替换之后
+ * 检查每一层卡片都显示着正确的数据
+ */
+public class DeckEngineTest {
+    private static final int DEPTH = 4;
+    private static final int FLY_DURATION = 200;
+
+    private FakeClock mClock;
+    private FakeHost mHost;
+    private DeckEngine<FakeCard> mEngine;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock();
+        mHost = new FakeHost();
+        mEngine = new DeckEngine<>(mHost, mClock);
+    }
+
+    private void attach() {
+        addCards();
+        mEngine.bindAll();
+    }
+
+    private void addCards() {
+        mEngine.reset(DEPTH);
+        for (int i = 0; i < DEPTH; i++) {
+            mEngine.addCard(new FakeCard());
+        }
+    }
+
+    private void swipe() {
+        assertTrue(mEngine.canRelease());
+        mEngine.release(mEngine.getStack().top(), FLY_DURATION);
+        // 第一帧开始计时
+        mClock.advance(16);
+        mClock.advance(FLY_DURATION);
+    }
+
+    @Test
+    public void swipe_throughAllItems() {
+        mHost.append(6);
+        attach();
+        for (int i = 0; i < 6; i++) {
+            assertInvariants();
+            swipe();
+        }
+        assertEquals(6, mEngine.getShowing());
+        assertFalse(mEngine.canRelease());
+        assertInvariants();
+        assertEquals(5, mHost.mLastShown);
+    }
+
+    @Test
+    public void flight_finishesOnlyAfterDuration() {
+        mHost.append(10);
+        attach();
+        FakeCard top = mEngine.getStack().top();
+        mEngine.release(top, FLY_DURATION);
+        mEngine.lockButtons();
+        mClock.advance(16);
+        mClock.advance(FLY_DURATION - 16);
+        assertEquals(0, mEngine.getShowing());
+        assertTrue(mEngine.isBtnLocked());
+        mClock.advance(16);
+        assertEquals(1, mEngine.getShowing());
+        assertFalse(mEngine.isBtnLocked());
+        assertSame(top, mEngine.getStack().bottom());
+        assertEquals(1, mHost.mFlyFinishedCount);
+    }
+
+    @Test
+    public void flyFinished_fromViewAndClock_reordersOnce() {
+        mHost.append(10);
+        attach();
+        FakeCard top = mEngine.getStack().top();
+        mEngine.release(top, FLY_DURATION);
+        // View 的动画先结束
+        mEngine.onFlyFinished(top);
+        mClock.advance(FLY_DURATION * 2);
+        assertEquals(1, mEngine.getShowing());
+        assertFalse(mEngine.hasReleased());
+        assertInvariants();
+    }
+
+    @Test
+    public void append_afterLastSwipe_revealsFromTop() {
+        mHost.append(2);
+        attach();
+        swipe();
+        swipe();
+        assertFalse(mEngine.isVisible(mEngine.getStack().top()));
+        mHost.append(3);
+        mEngine.onItemRangeInserted(2, 3);
+        assertEquals(2, mEngine.getShowing());
+        assertTrue(mEngine.canRelease());
+        assertEquals(2, mHost.mLastShown);
+        assertInvariants();
+    }
+
+    @Test
+    public void replaceAll_withoutStableIds_resetsToFirst() {
+        mHost.append(10);
+        attach();
+        swipe();
+        swipe();
+        mHost.replaceAll(5);
+        mEngine.onDataSetChanged();
+        assertEquals(0, mEngine.getShowing());
+        assertInvariants();
+    }
+
+    @Test
+    public void insertBeforeShowing_withStableIds_keepsTopCard() {
+        mHost.mStableIds = true;
+        mHost.append(10);
+        attach();
+        swipe();
+        swipe();
+        FakeCard top = mEngine.getStack().top();
+        Object topItem = mHost.boundItem(top);
+        mHost.insert(0, 3);
+        mEngine.onDataSetChanged();
+        assertEquals(5, mEngine.getShowing());
+        assertSame(topItem, mHost.boundItem(mEngine.getStack().top()));
+        assertInvariants();
+    }
+
+    @Test
+    public void bindAll_eagerTop_defersDeeperLayers() {
+        mHost.append(10);
+        addCards();
+        mEngine.bindAll(1);
+        assertEquals(1, mHost.mBindCount);
+        assertTrue(mEngine.hasPendingBind());
+        assertEquals(1, mEngine.bindPending(1));
+        assertEquals(DEPTH - 2, mEngine.bindPending(DEPTH));
+        assertFalse(mEngine.hasPendingBind());
+        assertEquals(DEPTH, mHost.mBindCount);
+        assertInvariants();
+    }
+
+    @Test
+    public void bindNextPending_bindsOneLayerAtATime() {
+        mHost.append(10);
+        addCards();
+        mEngine.bindAll(1);
+        assertEquals(1, mEngine.bindNextPending());
+        assertEquals(2, mHost.mBindCount);
+        assertEquals(2, mEngine.bindNextPending());
+        assertEquals(3, mEngine.bindNextPending());
+        assertEquals(-1, mEngine.bindNextPending());
+        assertInvariants();
+    }
+
+    @Test
+    public void swipeableCount_batchStartedMidFlight_excludesFlyingCards() {
+        mHost.append(5);
+        attach();
+        assertEquals(5, mEngine.getSwipeableCount());
+        mEngine.release(mEngine.getFront(), FLY_DURATION);
+        mClock.advance(16);
+        // 还在飞出时开始一批滑动，最多排队剩下的 4 张
+        int batch = Math.min(10, mEngine.getSwipeableCount());
+        assertEquals(4, batch);
+        mClock.advance(FLY_DURATION);
+        for (int i = 0; i < batch; i++) {
+            swipe();
+        }
+        assertEquals(5, mEngine.getShowing());
+        assertEquals(0, mEngine.getSwipeableCount());
+        assertFalse(mEngine.canRelease());
+        assertInvariants();
+    }
+
+    @Test
+    public void pendingCards_hiddenUntilBound() {
+        mHost.append(10);
+        addCards();
+        mEngine.bindAll(1);
+        CardStack<FakeCard> stack = mEngine.getStack();
+        assertTrue(stack.get(0).mVisible);
+        for (int layer = 1; layer < DEPTH; layer++) {
+            assertFalse("layer " + layer, stack.get(layer).mVisible);
+        }
+        mEngine.bindNextPending();
+        assertTrue(stack.get(1).mVisible);
+        assertFalse(stack.get(2).mVisible);
+        mEngine.bindPending(DEPTH);
+        assertInvariants();
+    }
+
+    @Test
+    public void swipe_withPendingCards_bindsFrontFirst() {
+        mHost.append(10);
+        addCards();
+        mEngine.bindAll(1);
+        swipe();
+        assertSame(mHost.mItems.get(1), mEngine.getStack().top().mItem);
+        mEngine.bindPending(DEPTH);
+        assertFalse(mEngine.hasPendingBind());
+        assertInvariants();
+    }
+
+    @Test
+    public void restore_withStableIds_findsMovedItem() {
+        mHost.mStableIds = true;
+        mHost.append(20);
+        Object saved = mHost.mItems.get(12);
+        mHost.insert(0, 3);
+        addCards();
+        mEngine.restore(12, mHost.getItemId(15));
+        mEngine.bindAll();
+        assertEquals(15, mEngine.getShowing());
+        assertSame(saved, mEngine.getStack().top().mItem);
+        assertInvariants();
+    }
+
+    @Test
+    public void restore_pastEnd_clampsToCount() {
+        mHost.append(5);
+        addCards();
+        mEngine.restore(8, DeckEngine.NO_ID);
+        mEngine.bindAll();
+        assertEquals(5, mEngine.getShowing());
+        assertFalse(mEngine.canRelease());
+        assertInvariants();
+    }
+
+    @Test
+    public void rewind_withRetainedCard_skipsBind() {
+        mHost.append(10);
+        mHost.mRetain = true;
+        attach();
+        FakeCard top = mEngine.getStack().top();
+        swipe();
+        assertEquals(-1, mEngine.getStack().layerOf(top));
+        int binds = mHost.mBindCount;
+        FakeCard displaced = mEngine.rewind(top, false);
+        assertEquals(0, mEngine.getShowing());
+        assertSame(top, mEngine.getStack().top());
+        assertEquals(-1, mEngine.getStack().layerOf(displaced));
+        assertEquals(binds, mHost.mBindCount);
+        assertEquals(0, mHost.mLastShown);
+        assertInvariants();
+    }
+
+    @Test
+    public void rewind_withBottomCard_rebinds() {
+        mHost.append(10);
+        attach();
+        swipe();
+        swipe();
+        assertNull(mEngine.rewind(mEngine.getStack().bottom(), true));
+        assertEquals(1, mEngine.getShowing());
+        assertInvariants();
+    }
+
+    @Test
+    public void rewind_atFirstCard_isIgnored() {
+        mHost.append(10);
+        attach();
+        assertNull(mEngine.rewind(mEngine.getStack().bottom(), true));
+        assertEquals(0, mEngine.getShowing());
+        assertInvariants();
+    }
+
+    @Test
+    public void skip_bindsEachLayerOnce() {
+        mHost.append(100);
+        attach();
+        int binds = mHost.mBindCount;
+        assertEquals(50, mEngine.skip(50));
+        assertEquals(50, mEngine.getShowing());
+        assertEquals(binds + DEPTH, mHost.mBindCount);
+        assertEquals(50, mHost.mLastShown);
+        assertInvariants();
+    }
+
+    @Test
+    public void skip_pastEnd_hidesStack() {
+        mHost.append(6);
+        attach();
+        assertEquals(6, mEngine.skip(10));
+        assertFalse(mEngine.canRelease());
+        assertInvariants();
+    }
+
+    @Test
+    public void release_insideFrame_waitsForItsDuration() {
+        mHost.append(10);
+        attach();
+        mHost.mReleaseOnFinish = mEngine;
+        mEngine.release(mEngine.getStack().top(), FLY_DURATION);
+        mClock.advance(16);
+        mClock.advance(FLY_DURATION);
+        // 第一张结束的同一帧中开始飞出的第二张还没有结束
+        assertEquals(1, mEngine.getShowing());
+        assertTrue(mEngine.hasReleased());
+        mHost.mReleaseOnFinish = null;
+        mClock.advance(16);
+        mClock.advance(FLY_DURATION);
+        assertEquals(2, mEngine.getShowing());
+        assertInvariants();
+    }
+
+    @Test
+    public void release_whilePreviousFlying_releasesFrontCard() {
+        mHost.append(10);
+        attach();
+        FakeCard first = mEngine.getStack().top();
+        mEngine.release(first, FLY_DURATION);
+        FakeCard second = mEngine.getFront();
+        assertSame(mEngine.getStack().get(1), second);
+        assertTrue(mEngine.canRelease());
+        // 已经在飞出中的卡片和后面的卡片都不能飞出
+        mEngine.release(first, FLY_DURATION);
+        mEngine.release(mEngine.getStack().get(2), FLY_DURATION);
+        assertEquals(1, mEngine.getStack().releasedCount());
+        mEngine.release(second, FLY_DURATION);
+        assertEquals(2, mEngine.getStack().releasedCount());
+        mClock.advance(16);
+        mClock.advance(FLY_DURATION);
+        assertEquals(2, mEngine.getShowing());
+        assertEquals(2, mHost.mFlyFinishedCount);
+        assertInvariants();
+    }
+
+    @Test
+    public void flyFinished_outOfOrder_waitsForEarlierCard() {
+        mHost.append(10);
+        attach();
+        FakeCard first = mEngine.getStack().top();
+        mEngine.release(first, FLY_DURATION);
+        FakeCard second = mEngine.getFront();
+        mEngine.release(second, FLY_DURATION);
+        mEngine.onFlyFinished(second);
+        assertEquals(0, mEngine.getShowing());
+        assertSame(first, mEngine.getStack().top());
+        mEngine.onFlyFinished(first);
+        assertEquals(2, mEngine.getShowing());
+        assertFalse(mEngine.hasReleased());
+        assertInvariants();
+    }
+
+    @Test
+    public void randomOperations_keepStackConsistent() {
+        Random random = new Random(42);
+        mHost.mStableIds = true;
+        mHost.append(20);
+        attach();
+        for (int step = 0; step < 200000; step++) {
+            randomOperation(random);
+            assertInvariants();
+        }
+    }
+
+    @Test
+    public void swipe_typedItems_swapsCardsOfOtherType() {
+        mHost.mTyped = true;
+        mHost.append(10);
+        attach();
+        // 0 到 3 中 1 和 3 是另一种类型
+        assertEquals(2, mHost.mSwapCount);
+        assertInvariants();
+        FakeCard bottom = mEngine.getStack().bottom();
+        swipe();
+        // 新露出的 4 与回到底层的 0 类型相同，不需要换卡片
+        assertEquals(2, mHost.mSwapCount);
+        assertSame(bottom, mEngine.getStack().get(DEPTH - 2));
+        // 在卡片栈之后插入一条类型 0 的数据，下一张回到底层的卡片是类型 1
+        int insertAt = mEngine.getShowing() + DEPTH;
+        mHost.insert(insertAt, 1);
+        mEngine.onItemRangeInserted(insertAt, 1);
+        swipe();
+        assertEquals(3, mHost.mSwapCount);
+        assertInvariants();
+    }
+
+    @Test
+    public void randomOperations_typedItems_keepStackConsistent() {
+        Random random = new Random(11);
+        mHost.mStableIds = true;
+        mHost.mTyped = true;
+        mHost.append(20);
+        attach();
+        for (int step = 0; step < 200000; step++) {
+            randomOperation(random);
+            assertInvariants();
+        }
+    }
+
+    @Test
+    public void randomOperations_withoutStableIds_keepStackConsistent() {
+        Random random = new Random(7);
+        mHost.append(20);
+        attach();
+        for (int step = 0; step < 200000; step++) {
+            randomOperation(random);
+            assertInvariants();
+        }
+    }
+
+    private void randomOperation(Random random) {
+        int count = mHost.mItems.size();
+        switch (random.nextInt(10)) {
+            case 0:
+            case 1:
+            case 2:
+                if (mEngine.canRelease()) {
+                    mEngine.release(mEngine.getFront(), 1 + random.nextInt(FLY_DURATION));
+                }
+                break;
+            case 3:
+                int appended = 1 + random.nextInt(5);
+                mHost.append(appended);
+                mEngine.onItemRangeInserted(count, appended);
+                break;
+            case 4:
+                int insertAt = random.nextInt(count + 1);
+                mHost.insert(insertAt, 1);
+                mEngine.onItemRangeInserted(insertAt, 1);
+                break;
+            case 5:
+                if (count > 0) {
+                    int removeAt = random.nextInt(count);
+                    int removed = Math.min(1 + random.nextInt(3), count - removeAt);
+                    mHost.remove(removeAt, removed);
+                    mEngine.onItemRangeRemoved(removeAt, removed);
+                }
+                break;
+            case 6:
+                if (count > 0) {
+                    int changeAt = random.nextInt(count);
+                    mHost.change(changeAt);
+                    mEngine.onItemRangeChanged(changeAt, 1);
+                }
+                break;
+            case 7:
+                if (random.nextInt(2) == 0 && !mEngine.hasReleased() && mEngine.getShowing() > 0) {
+                    FakeCard card = mEngine.getStack().bottom();
+                    mEngine.rewind(card, true);
+                    // 面板负责让回到顶层的卡片可见，重新绑定时可能换成了另一种类型的卡片
+                    mEngine.getStack().top().mVisible = true;
+                } else if (random.nextInt(4) == 0) {
+                    mEngine.skip(random.nextInt(DEPTH * 2));
+                } else if (random.nextInt(10) == 0) {
+                    mHost.replaceAll(random.nextInt(30));
+                    mEngine.onDataSetChanged();
+                }
+                break;
+            default:
+                mClock.advance(random.nextInt(FLY_DURATION));
+                break;
+        }
+    }
+
+    /**
+     * 每一层卡片显示的是 showing + layer 对应的数据，超出数据范围的卡片隐藏
+     */
+    private void assertInvariants() {
+        int count = mHost.mItems.size();
+        int showing = mEngine.getShowing();
+        assertTrue("showing " + showing + " count " + count, showing >= 0 && showing <= count);
+        CardStack<FakeCard> stack = mEngine.getStack();
+        for (int layer = 0; layer < stack.size(); layer++) {
+            FakeCard card = stack.get(layer);
+            int index = showing + layer;
+            assertEquals(mEngine.isVisible(card), card.mVisible);
+            if (index < count) {
+                assertTrue("layer " + layer + " hidden", card.mVisible);
+                assertSame("layer " + layer, mHost.mItems.get(index), card.mItem);
+                assertTrue("layer " + layer + " type", mHost.typeOf(card.mItem) == card.mType);
+            } else {
+                assertFalse("layer " + layer + " visible", card.mVisible);
+            }
+        }
+    }
+
+    private static final class FakeCard implements CardStack.Slot {
+        private int mSlot = -1;
+        private boolean mVisible = true;
+        private Object mItem;
+        private int mType = 0;
+
+        @Override
+        public int getStackSlot() {
+            return mSlot;
+        }
+
+        @Override
+        public void setStackSlot(int slot) {
+            mSlot = slot;
+        }
+    }
+
+    private static final class FakeClock implements FrameClock {
+        private long mNowNanos = 0;
+        private Runnable mPending;
+
+        @Override
+        public void scheduleFrame(Runnable frame) {
+            mPending = frame;
+        }
+
+        @Override
+        public long getFrameTimeNanos() {
+            return mNowNanos;
+        }
+
+        void advance(long millis) {
+            mNowNanos += millis * 1000000L;
+            Runnable frame = mPending;
+            mPending = null;
+            if (frame != null) {
+                frame.run();
+            }
+        }
+    }
+
+    private static final class Item {
+        private final long mId;
+
+        Item(long id) {
+            mId = id;
+        }
+    }
+
+    private static final class FakeHost implements DeckEngine.Host<FakeCard> {
+        private final List<Item> mItems = new ArrayList<>();
+        private boolean mStableIds = false;
+        private long mNextId = 0;
+        private int mLastShown = -1;
+        private int mFlyFinishedCount = 0;
+        private int mBindCount = 0;
+        /**
+         * 为 true 时飞出的卡片被保留，用一张新卡片代替它
+         */
+        private boolean mRetain = false;
+        /**
+         * 为 true 时 id 为奇数的数据是另一种类型，类型不一致的卡片绑定时换成新卡片
+         */
+        private boolean mTyped = false;
+        private int mSwapCount = 0;
+        /**
+         * 不为 null 时，每张卡片飞出结束后马上让下一张卡片飞出
+         */
+        private DeckEngine<FakeCard> mReleaseOnFinish;
+
+        void append(int count) {
+            insert(mItems.size(), count);
+        }
+
+        void insert(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                mItems.add(position + i, new Item(mNextId++));
+            }
+        }
+
+        void remove(int position, int count) {
+            for (int i = 0; i < count; i++) {
+                mItems.remove(position);
+            }
+        }
+
+        /**
+         * 同一个 id 的新数据
+         */
+        void change(int position) {
+            mItems.set(position, new Item(mItems.get(position).mId));
+        }
+
+        void replaceAll(int count) {
+            mItems.clear();
+            append(count);
+        }
+
+        Object boundItem(FakeCard card) {
+            return card.mItem;
+        }
+
+        int typeOf(Object item) {
+            return mTyped ? (int) (((Item) item).mId % 2) : 0;
+        }
+
+        @Override
+        public int getItemCount() {
+            return mItems.size();
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return mStableIds;
+        }
+
+        @Override
+        public long getItemId(int index) {
+            return mStableIds ? mItems.get(index).mId : DeckEngine.NO_ID;
+        }
+
+        @Override
+        public Object getItem(int index) {
+            return mItems.get(index);
+        }
+
+        @Override
+        public FakeCard bindCard(FakeCard card, int index) {
+            Item item = mItems.get(index);
+            if (card.mType != typeOf(item)) {
+                FakeCard replacement = new FakeCard();
+                replacement.mType = typeOf(item);
+                replacement.mVisible = card.mVisible;
+                card = replacement;
+                mSwapCount++;
+            }
+            card.mItem = item;
+            mBindCount++;
+            return card;
+        }
+
+        @Override
+        public void hideCard(FakeCard card) {
+            card.mVisible = false;
+        }
+
+        @Override
+        public void revealCard(FakeCard card, int fadeOrder) {
+            card.mVisible = true;
+        }
+
+        @Override
+        public FakeCard recycleToBottom(FakeCard card) {
+            return mRetain ? new FakeCard() : card;
+        }
+
+        @Override
+        public void onFlyFinished(FakeCard card) {
+            mFlyFinishedCount++;
+            if (mReleaseOnFinish != null && mReleaseOnFinish.canRelease()) {
+                mReleaseOnFinish.release(mReleaseOnFinish.getFront(), FLY_DURATION);
+            }
+        }
+
+        @Override
+        public void onShow(int index) {
+            mLastShown = index;
+        }
+
+        @Override
+        public void onStackWindowChanged(int showingIndex, int stackDepth) {
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.stone.card.library;
+
+import com.stone.card.core.DeckEngine;
+
+/**
+ * 分帧绑定
+ * <p>
+ * 建立卡片栈时只同步绑定顶层卡片，下面的卡片在之后的帧中从上到下逐张绑定，
+ * 每一帧至少绑定一张，超过时间预算后留到下一帧。拖动或者飞出开始时，跟随联动的卡片全部同步绑定，
+ * 所以正确性不依赖于后面的帧。
+ *
+ * @author im_dsd
+ */
+final class BindScheduler implements CardAnimationClock.FrameCallback {
+    /**
+     * 默认每一帧用于绑定的时间预算，60Hz 时一帧的四分之一
+     */
+    static final long DEFAULT_FRAME_BUDGET_NANOS = 4000000;
+
+    private final DeckEngine<CardItemView> mDeck;
+    private long mFrameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+    private boolean mScheduled = false;
+
+    BindScheduler(DeckEngine<CardItemView> deck) {
+        mDeck = deck;
+    }
+
+    /**
+     * 有等待绑定的卡片时，从下一帧开始绑定
+     */
+    void schedule() {
+        if (!mScheduled && mDeck.hasPendingBind()) {
+            mScheduled = true;
+            CardAnimationClock.getInstance().addAnimation(this);
+        }
+    }
+
+    /**
+     * 不深于 maxLayer 层的卡片马上绑定
+     */
+    void bindNow(int maxLayer) {
+        mDeck.bindPending(maxLayer);
+        if (!mDeck.hasPendingBind()) {
+            cancel();
+        }
+    }
+
+    void setFrameBudgetNanos(long budgetNanos) {
+        mFrameBudgetNanos = Math.max(0, budgetNanos);
+    }
+
+    void cancel() {
+        if (mScheduled) {
+            mScheduled = false;
+            CardAnimationClock.getInstance().removeAnimation(this);
+        }
+    }
+
+    @Override
+    public boolean doAnimationFrame(long frameTimeNanos) {
+        long start = System.nanoTime();
+        while (mDeck.bindNextPending() >= 0 && System.nanoTime() - start < mFrameBudgetNanos) {
+            // 预算之内继续绑定下一张
+        }
+        mScheduled = mDeck.hasPendingBind();
+        return mScheduled;
+    }
+}
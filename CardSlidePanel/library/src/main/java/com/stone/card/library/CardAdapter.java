@@ -10,14 +10,32 @@ import android.view.View;
  */
 
 public abstract class CardAdapter {
+    /**
+     * 没有稳定 id 时 {@link #getItemId(int)} 的返回值
+     */
+    public static final long NO_ID = -1;
 
-    private final DataSetObservable mDataSetObservable = new DataSetObservable();
+    private final CardDataObservable mDataSetObservable = new CardDataObservable();
 
     /**
-     * layout文件ID，调用者必须实现
+     * layout文件ID，调用者必须实现；有多种卡片类型时是类型 0 的布局
      */
     public abstract int getLayoutId();
 
+    /**
+     * 数据对应的卡片类型，可重载。不同类型的卡片使用不同的布局，复用池按布局分别存放
+     */
+    public int getItemViewType(int index) {
+        return 0;
+    }
+
+    /**
+     * 卡片类型对应的布局，有多种卡片类型时重载，默认都是 {@link #getLayoutId()}
+     */
+    public int getLayoutId(int viewType) {
+        return getLayoutId();
+    }
+
     /**
      * item数量，调用者必须实现
      */
@@ -34,6 +52,22 @@ public abstract class CardAdapter {
     public abstract Object getItem(int index);
 
 
+    /**
+     * 每条数据是否有稳定的 id，返回 true 时需要同时实现 {@link #getItemId(int)}
+     * <p>
+     * 有稳定 id 时，数据变化后面板按 id 找回当前显示的卡片，并且跳过 id 没有变化的卡片的重新绑定
+     */
+    public boolean hasStableIds() {
+        return false;
+    }
+
+    /**
+     * 数据的稳定 id，同一条数据在任何时候都要返回相同的值
+     */
+    public long getItemId(int index) {
+        return NO_ID;
+    }
+
     /**
      * 可滑动区域定制
      *
@@ -43,6 +77,15 @@ public abstract class CardAdapter {
         return null;
     }
 
+    /**
+     * 卡片栈显示的范围发生变化时回调，可重载，用于提前准备后续卡片的数据
+     *
+     * @param showingIndex 最顶层显示的卡片的index
+     * @param stackDepth   卡片层数
+     */
+    public void onStackWindowChanged(int showingIndex, int stackDepth) {
+    }
+
     public void registerDataSetObserver(DataSetObserver observer) {
         mDataSetObservable.registerObserver(observer);
     }
@@ -54,4 +97,96 @@ public abstract class CardAdapter {
     public void notifyDataSetChanged() {
         mDataSetObservable.notifyChanged();
     }
+
+    /**
+     * 单条数据内容变化
+     */
+    public void notifyItemChanged(int index) {
+        notifyItemRangeChanged(index, 1);
+    }
+
+    /**
+     * [positionStart, positionStart + itemCount) 范围内的数据内容变化，
+     * 不在卡片栈中的数据变化不会重新绑定任何 View
+     */
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        mDataSetObservable.notifyItemRangeChanged(positionStart, itemCount);
+    }
+
+    /**
+     * 在 positionStart 处插入了 itemCount 条数据，追加数据时 positionStart 等于原来的 getCount()
+     */
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        mDataSetObservable.notifyItemRangeInserted(positionStart, itemCount);
+    }
+
+    /**
+     * 从 positionStart 处删除了 itemCount 条数据
+     */
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        mDataSetObservable.notifyItemRangeRemoved(positionStart, itemCount);
+    }
+
+    /**
+     * 可以接收局部数据变化的观察者，默认都按 {@link #onChanged()} 处理
+     */
+    public abstract static class CardDataObserver extends DataSetObserver {
+
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onChanged();
+        }
+    }
+
+    /**
+     * 普通的 DataSetObserver 收到的局部变化统一转为 onChanged
+     */
+    private static class CardDataObservable extends DataSetObservable {
+
+        void notifyItemRangeChanged(int positionStart, int itemCount) {
+            synchronized (mObservers) {
+                for (int i = mObservers.size() - 1; i >= 0; i--) {
+                    DataSetObserver observer = mObservers.get(i);
+                    if (observer instanceof CardDataObserver) {
+                        ((CardDataObserver) observer).onItemRangeChanged(positionStart, itemCount);
+                    } else {
+                        observer.onChanged();
+                    }
+                }
+            }
+        }
+
+        void notifyItemRangeInserted(int positionStart, int itemCount) {
+            synchronized (mObservers) {
+                for (int i = mObservers.size() - 1; i >= 0; i--) {
+                    DataSetObserver observer = mObservers.get(i);
+                    if (observer instanceof CardDataObserver) {
+                        ((CardDataObserver) observer).onItemRangeInserted(positionStart, itemCount);
+                    } else {
+                        observer.onChanged();
+                    }
+                }
+            }
+        }
+
+        void notifyItemRangeRemoved(int positionStart, int itemCount) {
+            synchronized (mObservers) {
+                for (int i = mObservers.size() - 1; i >= 0; i--) {
+                    DataSetObserver observer = mObservers.get(i);
+                    if (observer instanceof CardDataObserver) {
+                        ((CardDataObserver) observer).onItemRangeRemoved(positionStart, itemCount);
+                    } else {
+                        observer.onChanged();
+                    }
+                }
+            }
+        }
+    }
 }
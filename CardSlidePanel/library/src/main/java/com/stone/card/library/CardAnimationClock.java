@@ -0,0 +1,222 @@
+package com.stone.card.library;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import com.facebook.rebound.BaseSpringSystem;
+import com.facebook.rebound.Spring;
+import com.facebook.rebound.SpringLooper;
+
+import java.util.ArrayList;
+
+/**
+ * 进程内唯一的卡片动画时钟，只能在主线程使用
+ * <p>
+ * 所有卡片的 spring、飞出动画、渐显动画都在同一个 Choreographer 帧回调中推进，
+ * 每一帧结束时每张卡片最多回调一次位置变化，之后执行 {@link #runAtFrameEnd(Runnable)} 登记的任务。
+ * 没有任何动画时不再注册帧回调。
+ *
+ * @author im_dsd
+ */
+@SuppressLint("NewApi")
+final class CardAnimationClock extends SpringLooper {
+    /**
+     * 不支持 Choreographer 的系统上使用的帧间隔
+     */
+    private static final long FALLBACK_FRAME_DELAY = 16;
+    private static final long NANOS_PER_MS = 1000000;
+    private static CardAnimationClock sInstance;
+
+    /**
+     * 帧动画回调
+     */
+    interface FrameCallback {
+        /**
+         * 推进一帧
+         *
+         * @return 动画是否还需要继续
+         */
+        boolean doAnimationFrame(long frameTimeNanos);
+    }
+
+    private final BaseSpringSystem mSpringSystem;
+    private final ArrayList<FrameCallback> mAnimations = new ArrayList<>();
+    /**
+     * 这一帧要执行的动画，回调中增删 mAnimations 不影响遍历
+     */
+    private final ArrayList<FrameCallback> mRunningAnimations = new ArrayList<>();
+    private final ArrayList<CardItemView> mDirtyCards = new ArrayList<>();
+    private final ArrayList<Runnable> mFrameEndTasks = new ArrayList<>();
+    private final ArrayList<Runnable> mRunningFrameEndTasks = new ArrayList<>();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFallbackFrame = new Runnable() {
+        @Override
+        public void run() {
+            doFrame(System.nanoTime());
+        }
+    };
+    /**
+     * Choreographer 在 API 16 才加入，低版本不能加载这个类
+     */
+    private ChoreographerCallback mChoreographerCallback;
+    private boolean mSpringsRunning = false;
+    private boolean mFrameScheduled = false;
+    private long mLastSpringFrameNanos = 0;
+
+    static CardAnimationClock getInstance() {
+        if (sInstance == null) {
+            sInstance = new CardAnimationClock();
+        }
+        return sInstance;
+    }
+
+    private CardAnimationClock() {
+        mSpringSystem = new BaseSpringSystem(this);
+    }
+
+    /**
+     * 创建由该时钟驱动的 spring，不再使用时需要调用 {@link Spring#destroy()}
+     */
+    Spring createSpring() {
+        return mSpringSystem.createSpring();
+    }
+
+    /**
+     * 开始逐帧回调，直到返回 false
+     */
+    void addAnimation(FrameCallback animation) {
+        if (!mAnimations.contains(animation)) {
+            mAnimations.add(animation);
+        }
+        scheduleFrame();
+    }
+
+    void removeAnimation(FrameCallback animation) {
+        mAnimations.remove(animation);
+    }
+
+    /**
+     * 标记卡片位置发生了变化，在这一帧结束时统一回调
+     */
+    void markPositionChanged(CardItemView itemView) {
+        if (itemView.isPositionDirty()) {
+            return;
+        }
+        itemView.setPositionDirty(true);
+        mDirtyCards.add(itemView);
+        scheduleFrame();
+    }
+
+    /**
+     * 在这一帧的位置变化回调之后执行一次，同一个任务在一帧内只执行一次。
+     * 触摸事件在同一帧的动画回调之前分发，拖动中登记的任务在这一帧内执行
+     */
+    void runAtFrameEnd(Runnable task) {
+        if (!mFrameEndTasks.contains(task)) {
+            mFrameEndTasks.add(task);
+        }
+        scheduleFrame();
+    }
+
+    void removeDirtyCard(CardItemView itemView) {
+        if (itemView.isPositionDirty()) {
+            itemView.setPositionDirty(false);
+            mDirtyCards.remove(itemView);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!mSpringsRunning) {
+            mSpringsRunning = true;
+            mLastSpringFrameNanos = System.nanoTime();
+        }
+        scheduleFrame();
+    }
+
+    @Override
+    public void stop() {
+        mSpringsRunning = false;
+    }
+
+    void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+
+        // 1. spring
+        if (mSpringsRunning) {
+            long elapsedNanos = Math.max(0, frameTimeNanos - mLastSpringFrameNanos);
+            mLastSpringFrameNanos = frameTimeNanos;
+            mSpringSystem.loop(elapsedNanos / (double) NANOS_PER_MS);
+        }
+
+        // 2. 飞出、渐显等动画，遍历这一帧开始时的快照，回调中移除的动画不再执行，新加入的从下一帧开始
+        copyInto(mAnimations, mRunningAnimations);
+        for (int i = 0; i < mRunningAnimations.size(); i++) {
+            FrameCallback animation = mRunningAnimations.get(i);
+            if (mAnimations.contains(animation) && !animation.doAnimationFrame(frameTimeNanos)) {
+                mAnimations.remove(animation);
+            }
+        }
+        mRunningAnimations.clear();
+
+        // 3. 每张卡片在一帧内只回调一次位置变化
+        for (int i = 0; i < mDirtyCards.size(); i++) {
+            CardItemView itemView = mDirtyCards.get(i);
+            itemView.setPositionDirty(false);
+            itemView.dispatchPositionChanged();
+        }
+        mDirtyCards.clear();
+
+        // 4. 合并到帧末尾的任务，执行中重新登记的任务留到下一帧
+        copyInto(mFrameEndTasks, mRunningFrameEndTasks);
+        mFrameEndTasks.clear();
+        for (int i = 0; i < mRunningFrameEndTasks.size(); i++) {
+            mRunningFrameEndTasks.get(i).run();
+        }
+        mRunningFrameEndTasks.clear();
+
+        if (mSpringsRunning || !mAnimations.isEmpty()) {
+            scheduleFrame();
+        }
+    }
+
+    /**
+     * 逐个复制，addAll 每次都会通过 toArray 分配一个新数组
+     */
+    private static <E> void copyInto(ArrayList<E> from, ArrayList<E> to) {
+        for (int i = 0; i < from.size(); i++) {
+            to.add(from.get(i));
+        }
+    }
+
+    private void scheduleFrame() {
+        if (mFrameScheduled) {
+            return;
+        }
+        mFrameScheduled = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (mChoreographerCallback == null) {
+                mChoreographerCallback = new ChoreographerCallback(this);
+            }
+            Choreographer.getInstance().postFrameCallback(mChoreographerCallback);
+        } else {
+            mHandler.postDelayed(mFallbackFrame, FALLBACK_FRAME_DELAY);
+        }
+    }
+
+    private static class ChoreographerCallback implements Choreographer.FrameCallback {
+        private final CardAnimationClock mClock;
+
+        ChoreographerCallback(CardAnimationClock clock) {
+            mClock = clock;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mClock.doFrame(frameTimeNanos);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.stone.card.library;
+
+import android.content.Context;
+
+/**
+ * 卡片 View 的取出、归还和数据绑定
+ * <p>
+ * 卡片从 {@link CardViewPool} 中取出，池中没有时才会 inflate 并计入统计；
+ * 卡片内容还在异步 inflate 时，数据绑定推迟到内容准备好之后。
+ * 卡片归还或者回到底层重新绑定之前，先释放 {@link CardImageLoader} 加载在它上面的图片。
+ *
+ * @author im_dsd
+ */
+final class CardBinder {
+    private final Context mContext;
+    private final CardPanelStats mStats;
+    /**
+     * 卡片复用池，可以在多个面板之间共享
+     */
+    private CardViewPool mPool = new CardViewPool();
+    /**
+     * 是否在后台线程 inflate 卡片布局，以及内容准备好之前占位 View 的背景
+     */
+    private boolean mAsyncInflate = false;
+    private int mPlaceholderResId = 0;
+    /**
+     * 按卡片大小解码的图片加载器，可选
+     */
+    private CardImageLoader mImageLoader;
+    private int mCardWidth = 0;
+    private int mCardHeight = 0;
+
+    CardBinder(Context context, CardPanelStats stats) {
+        mContext = context;
+        mStats = stats;
+    }
+
+    /**
+     * 从复用池取出 index 对应类型的卡片，池中没有时才会 inflate 并计入统计
+     *
+     * @param index 超出数据范围时取出 {@link CardAdapter#getLayoutId()} 布局的卡片
+     */
+    CardItemView acquire(CardAdapter adapter, int index) {
+        int missCount = mPool.getMissCount();
+        long start = mStats.begin(CardPanelStats.OP_INFLATE);
+        CardItemView itemView = mPool.acquire(mContext, getLayoutId(adapter, index), mAsyncInflate);
+        if (mPool.getMissCount() != missCount) {
+            mStats.end(CardPanelStats.OP_INFLATE, start);
+        } else {
+            mStats.cancel(start);
+        }
+        itemView.setPlaceholderResId(mPlaceholderResId);
+        return itemView;
+    }
+
+    /**
+     * 卡片归还到复用池，调用前卡片已经从面板中移除
+     */
+    void release(CardItemView itemView) {
+        releaseImages(itemView);
+        mPool.release(itemView);
+    }
+
+    /**
+     * 卡片的布局与 index 对应的类型是否一致，不一致时需要换成另一张卡片再绑定
+     */
+    boolean matchesType(CardAdapter adapter, CardItemView itemView, int index) {
+        return itemView.getLayoutResId() == getLayoutId(adapter, index);
+    }
+
+    private static int getLayoutId(CardAdapter adapter, int index) {
+        if (index < 0 || index >= adapter.getCount()) {
+            return adapter.getLayoutId();
+        }
+        return adapter.getLayoutId(adapter.getItemViewType(index));
+    }
+
+    /**
+     * 新数据绑定之前先释放，被淘汰的图片可以直接用于新数据的解码
+     */
+    void releaseImages(CardItemView itemView) {
+        if (mImageLoader != null) {
+            mImageLoader.releaseCard(itemView);
+        }
+    }
+
+    void setImageLoader(CardImageLoader imageLoader) {
+        mImageLoader = imageLoader;
+        if (imageLoader != null && mCardWidth > 0) {
+            imageLoader.setTargetSize(mCardWidth, mCardHeight);
+        }
+    }
+
+    CardImageLoader getImageLoader() {
+        return mImageLoader;
+    }
+
+    /**
+     * 卡片 layout 之后更新，图片按卡片大小解码
+     */
+    void setCardSize(int width, int height) {
+        mCardWidth = width;
+        mCardHeight = height;
+        if (mImageLoader != null) {
+            mImageLoader.setTargetSize(width, height);
+        }
+    }
+
+    /**
+     * 给卡片绑定数据，卡片内容还在异步 inflate 时，等内容准备好再绑定
+     */
+    void bind(CardAdapter adapter, CardItemView itemView, int index) {
+        if (!itemView.isContentReady()) {
+            itemView.setPendingBindIndex(index);
+            return;
+        }
+        itemView.setPendingBindIndex(-1);
+        long start = mStats.begin(CardPanelStats.OP_BIND);
+        try {
+            adapter.bindView(itemView, index);
+            itemView.invalidateSnapshot();
+        } finally {
+            mStats.end(CardPanelStats.OP_BIND, start);
+        }
+    }
+
+    /**
+     * 异步 inflate 完成，补上等待中的数据绑定
+     */
+    void onContentReady(CardAdapter adapter, CardItemView itemView) {
+        int pendingIndex = itemView.getPendingBindIndex();
+        if (adapter != null && pendingIndex >= 0 && pendingIndex < adapter.getCount()) {
+            bind(adapter, itemView, pendingIndex);
+        }
+    }
+
+    void prewarm(int layoutId, int count) {
+        mPool.prewarm(mContext, layoutId, count, mAsyncInflate);
+    }
+
+    void setPool(CardViewPool pool) {
+        mPool = pool;
+    }
+
+    CardViewPool getPool() {
+        return mPool;
+    }
+
+    void setAsyncInflate(boolean asyncInflate) {
+        mAsyncInflate = asyncInflate;
+    }
+
+    void setPlaceholderResId(int placeholderResId) {
+        mPlaceholderResId = placeholderResId;
+    }
+}
@@ -0,0 +1,180 @@
+package com.stone.card.library;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * 卡片绘制裁剪
+ * <p>
+ * 按上一层卡片的位置和缩放计算遮挡：完全透明、完全被上一层挡住的卡片不再绘制，
+ * 部分被挡住的卡片只画露出来的那一条。遮挡按矩形计算，只适合背景不透明的卡片，默认关闭；
+ * 卡片有圆角时用 {@link #setCoverInset(int)} 让出圆角的高度。
+ * 开启后卡片每次移动面板都会重新记录一次绘制（只是子 View 的绘制命令，开销很小）。
+ *
+ * @author im_dsd
+ */
+public final class CardDrawCuller {
+    static final int DRAW = 0;
+    static final int CLIP = 1;
+    static final int CULL = 2;
+
+    private final Rect mChildRect = new Rect();
+    private final Rect mCoverRect = new Rect();
+    private final Rect mClipRect = new Rect();
+    private boolean mEnabled = false;
+    private boolean mDebugOverlay = false;
+    private int mCoverInset = 0;
+    private Paint mDebugPaint;
+    private int mFrameCulled = 0;
+    private int mFrameClipped = 0;
+    private long mFrameCount = 0;
+    private long mCulledCount = 0;
+    private long mClippedCount = 0;
+
+    /**
+     * 是否启用，卡片背景不透明时才可以开启
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * 上一层卡片底部不算作遮挡的高度，卡片有圆角时设置为圆角半径
+     */
+    public void setCoverInset(int coverInset) {
+        mCoverInset = Math.max(0, coverInset);
+    }
+
+    public int getCoverInset() {
+        return mCoverInset;
+    }
+
+    /**
+     * 是否在面板左上角画出每一帧跳过和裁剪的卡片数量，调试用
+     */
+    public void setDebugOverlay(boolean debugOverlay) {
+        mDebugOverlay = debugOverlay;
+    }
+
+    public boolean isDebugOverlay() {
+        return mDebugOverlay;
+    }
+
+    /**
+     * 上一帧没有绘制的卡片数量，包含不可见的卡片
+     */
+    public int getFrameCulledCount() {
+        return mFrameCulled;
+    }
+
+    /**
+     * 上一帧只画了露出部分的卡片数量
+     */
+    public int getFrameClippedCount() {
+        return mFrameClipped;
+    }
+
+    /**
+     * 启用以来面板绘制的帧数
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 累计没有绘制的卡片数量
+     */
+    public long getCulledCount() {
+        return mCulledCount;
+    }
+
+    /**
+     * 累计只画了露出部分的卡片数量
+     */
+    public long getClippedCount() {
+        return mClippedCount;
+    }
+
+    public void reset() {
+        mFrameCulled = 0;
+        mFrameClipped = 0;
+        mFrameCount = 0;
+        mCulledCount = 0;
+        mClippedCount = 0;
+    }
+
+    /**
+     * 面板开始绘制，不可见的卡片不会进入 drawChild，在这里计数
+     */
+    void beginFrame(ViewGroup panel) {
+        mFrameCount++;
+        mFrameCulled = 0;
+        mFrameClipped = 0;
+        for (int i = panel.getChildCount() - 1; i >= 0; i--) {
+            if (panel.getChildAt(i).getVisibility() != View.VISIBLE) {
+                mFrameCulled++;
+            }
+        }
+        mCulledCount += mFrameCulled;
+    }
+
+    /**
+     * 计算卡片需要画的部分，返回 {@link #CLIP} 时用 {@link #getClipRect()} 裁剪
+     *
+     * @param cover 上一层的卡片，顶层卡片为 null
+     */
+    int cull(View child, View cover) {
+        if (child.getAlpha() <= 0) {
+            return culled();
+        }
+        if (cover == null || cover.getVisibility() != View.VISIBLE || cover.getAlpha() < 1) {
+            return DRAW;
+        }
+        // 包含位移和缩放之后在面板中的位置
+        child.getHitRect(mChildRect);
+        cover.getHitRect(mCoverRect);
+        mCoverRect.bottom -= mCoverInset;
+        if (mCoverRect.contains(mChildRect)) {
+            return culled();
+        }
+        // 下面的卡片更窄、更靠下，被挡住的是上面一截，只画底部露出来的部分
+        if (mCoverRect.left <= mChildRect.left && mCoverRect.right >= mChildRect.right
+                && mCoverRect.top <= mChildRect.top && mCoverRect.bottom > mChildRect.top) {
+            mClipRect.set(mChildRect.left, mCoverRect.bottom, mChildRect.right, mChildRect.bottom);
+            mFrameClipped++;
+            mClippedCount++;
+            return CLIP;
+        }
+        return DRAW;
+    }
+
+    private int culled() {
+        mFrameCulled++;
+        mCulledCount++;
+        return CULL;
+    }
+
+    Rect getClipRect() {
+        return mClipRect;
+    }
+
+    void drawOverlay(Canvas canvas) {
+        if (!mDebugOverlay) {
+            return;
+        }
+        if (mDebugPaint == null) {
+            mDebugPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mDebugPaint.setColor(Color.RED);
+            mDebugPaint.setTextSize(36);
+        }
+        canvas.drawText("culled " + mFrameCulled + "  clipped " + mFrameClipped, 16, 48, mDebugPaint);
+    }
+}
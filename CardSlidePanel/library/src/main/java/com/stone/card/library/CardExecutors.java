@@ -0,0 +1,43 @@
+package com.stone.card.library;
+
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Adapter 默认使用的后台线程池
+ *
+ * @author im_dsd
+ */
+final class CardExecutors {
+    private static ExecutorService sBackground;
+
+    private CardExecutors() {
+    }
+
+    /**
+     * 后台优先级的单线程池，进程内共享
+     */
+    static synchronized Executor background() {
+        if (sBackground == null) {
+            sBackground = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "CardBackground");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sBackground;
+    }
+}
@@ -0,0 +1,409 @@
+package com.stone.card.library;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.stone.card.core.BitmapReuse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 按卡片大小解码的图片加载器，通过 {@link CardSlidePanel#setImageLoader(CardImageLoader)} 与面板关联
+ * <p>
+ * 1. 图片按卡片的大小采样并缩放，覆盖卡片的一边与卡片完全相等，不会解码出比卡片更大的图；
+ * 2. 解码后的图片放在按数量限制的 LRU 中，数量一般等于 卡片层数 + 预加载的数量；
+ * 3. 被 LRU 淘汰并且已经没有卡片在显示的图片进入复用池，下一次解码通过 inBitmap 直接写入，
+ * 卡片飞出回到底层时面板会释放它上面的图片，所以稳定滑动时不再分配新的图片内存。
+ * <p>
+ * 支持 file:///android_asset/、file://、content://、android.resource:// 地址，解码在后台线程，其余方法只能在主线程调用。
+ *
+ * @author im_dsd
+ */
+public final class CardImageLoader {
+    private static final String TAG = "CardImageLoader";
+    private static final String ASSET_PREFIX = "file:///android_asset/";
+    private static final int DEFAULT_MAX_COUNT = 8;
+    private static final int MAX_REUSE_POOL_SIZE = 4;
+
+    /**
+     * 一张解码后的图片
+     */
+    private static final class Entry {
+        private final String mKey;
+        private final Bitmap mBitmap;
+        private int mDisplayCount = 0;
+        private boolean mCached = true;
+
+        Entry(String key, Bitmap bitmap) {
+            mKey = key;
+            mBitmap = bitmap;
+        }
+    }
+
+    private final Context mContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LinkedHashMap<String, Entry> mCache = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 每个 ImageView 正在显示的图片，以及等待解码完成的地址
+     */
+    private final WeakHashMap<ImageView, Entry> mDisplayed = new WeakHashMap<>();
+    private final WeakHashMap<ImageView, String> mRequested = new WeakHashMap<>();
+    private final HashSet<String> mDecoding = new HashSet<>();
+    /**
+     * 可以通过 inBitmap 复用的图片，后台线程也会访问，通过自身加锁
+     */
+    private final ArrayList<Bitmap> mReusePool = new ArrayList<>();
+    private int mMaxCount;
+    private int mTargetWidth;
+    private int mTargetHeight;
+    private long mCacheBytes = 0;
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+    private int mReuseCount = 0;
+    private int mAllocationCount = 0;
+
+    public CardImageLoader(Context context) {
+        this(context, DEFAULT_MAX_COUNT);
+    }
+
+    /**
+     * @param maxCount 缓存的图片数量，一般等于 卡片层数 + 预加载的数量
+     */
+    public CardImageLoader(Context context, int maxCount) {
+        mContext = context.getApplicationContext();
+        mMaxCount = Math.max(1, maxCount);
+        DisplayMetrics metrics = mContext.getResources().getDisplayMetrics();
+        mTargetWidth = metrics.widthPixels;
+        mTargetHeight = metrics.heightPixels;
+    }
+
+    /**
+     * 加载图片显示到 imageView 上，缓存中没有时先清空，解码完成后再显示
+     */
+    public void load(ImageView imageView, String path) {
+        Entry current = mDisplayed.get(imageView);
+        if (current != null && current.mKey.equals(path)) {
+            mHitCount++;
+            return;
+        }
+        release(imageView);
+        Entry entry = mCache.get(path);
+        if (entry != null) {
+            mHitCount++;
+            display(imageView, entry);
+            return;
+        }
+        mMissCount++;
+        mRequested.put(imageView, path);
+        decodeAsync(path);
+    }
+
+    /**
+     * 提前解码到缓存中，比如即将进入卡片栈的卡片
+     */
+    public void preload(String path) {
+        if (!mCache.containsKey(path)) {
+            decodeAsync(path);
+        }
+    }
+
+    /**
+     * 释放 imageView 上的图片，图片已经被淘汰时进入复用池
+     */
+    public void release(ImageView imageView) {
+        mRequested.remove(imageView);
+        Entry entry = mDisplayed.remove(imageView);
+        if (entry != null) {
+            imageView.setImageDrawable(null);
+            entry.mDisplayCount--;
+            offerIfUnused(entry);
+        }
+    }
+
+    /**
+     * 释放卡片中所有由加载器显示的图片，卡片回到最底层或者回收到复用池时由面板调用
+     */
+    void releaseCard(View view) {
+        if (view instanceof ImageView) {
+            release((ImageView) view);
+        } else if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                releaseCard(group.getChildAt(i));
+            }
+        }
+    }
+
+    /**
+     * 卡片的大小，由面板在 layout 后设置
+     */
+    void setTargetSize(int width, int height) {
+        if (width > 0 && height > 0) {
+            mTargetWidth = width;
+            mTargetHeight = height;
+        }
+    }
+
+    /**
+     * 设置缓存的图片数量
+     */
+    public void setMaxCount(int maxCount) {
+        mMaxCount = Math.max(1, maxCount);
+        trimToSize();
+    }
+
+    /**
+     * 清空缓存和复用池，正在显示的图片不受影响
+     */
+    public void clear() {
+        Iterator<Entry> iterator = mCache.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            entry.mCached = false;
+            mCacheBytes -= byteCount(entry.mBitmap);
+        }
+        synchronized (mReusePool) {
+            mReusePool.clear();
+        }
+    }
+
+    private void display(ImageView imageView, Entry entry) {
+        entry.mDisplayCount++;
+        mDisplayed.put(imageView, entry);
+        imageView.setImageBitmap(entry.mBitmap);
+        CardItemView.invalidateSnapshotOf(imageView);
+    }
+
+    private void decodeAsync(final String path) {
+        if (!mDecoding.add(path)) {
+            return;
+        }
+        final int width = mTargetWidth;
+        final int height = mTargetHeight;
+        CardExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = decode(path, width, height);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onDecoded(path, bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onDecoded(String path, Bitmap bitmap) {
+        mDecoding.remove(path);
+        if (bitmap == null) {
+            return;
+        }
+        Entry entry = new Entry(path, bitmap);
+        mCache.put(path, entry);
+        mCacheBytes += byteCount(bitmap);
+        Iterator<Map.Entry<ImageView, String>> iterator = mRequested.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<ImageView, String> request = iterator.next();
+            if (path.equals(request.getValue())) {
+                iterator.remove();
+                display(request.getKey(), entry);
+            }
+        }
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Entry> iterator = mCache.values().iterator();
+        while (mCache.size() > mMaxCount && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            eldest.mCached = false;
+            mCacheBytes -= byteCount(eldest.mBitmap);
+            offerIfUnused(eldest);
+        }
+    }
+
+    private void offerIfUnused(Entry entry) {
+        if (entry.mCached || entry.mDisplayCount > 0 || !entry.mBitmap.isMutable()) {
+            return;
+        }
+        synchronized (mReusePool) {
+            if (mReusePool.size() < MAX_REUSE_POOL_SIZE) {
+                mReusePool.add(entry.mBitmap);
+            }
+        }
+    }
+
+    /**
+     * 在后台线程解码，先采样到不小于卡片的 2 的幂，再缩放到刚好覆盖卡片
+     */
+    private Bitmap decode(String path, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sampleSize = BitmapReuse.sampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        int sampledWidth = options.outWidth / sampleSize;
+        int sampledHeight = options.outHeight / sampleSize;
+        float scaleX = targetWidth / (float) sampledWidth;
+        float scaleY = targetHeight / (float) sampledHeight;
+        float scale = Math.max(scaleX, scaleY);
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        if (scale < 1) {
+            // 通过密度缩放，解码时一次完成，覆盖卡片的那一边与卡片相等
+            options.inScaled = true;
+            options.inDensity = scaleX >= scaleY ? sampledWidth : sampledHeight;
+            options.inTargetDensity = scaleX >= scaleY ? targetWidth : targetHeight;
+        } else {
+            options.inScaled = false;
+            scale = 1;
+        }
+        int outWidth = (int) (sampledWidth * scale + 0.5f);
+        int outHeight = (int) (sampledHeight * scale + 0.5f);
+        boolean exactDecode = sampleSize == 1 && scale == 1;
+        options.inBitmap = takeReusable(outWidth, outHeight, exactDecode);
+        Bitmap bitmap = null;
+        try {
+            bitmap = decodeStream(path, options);
+        } catch (IllegalArgumentException e) {
+            // 复用的图片不满足条件，重新分配
+            options.inBitmap = null;
+            bitmap = decodeStream(path, options);
+        }
+        synchronized (mReusePool) {
+            if (bitmap != null && bitmap == options.inBitmap) {
+                mReuseCount++;
+            } else if (bitmap != null) {
+                mAllocationCount++;
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * 从复用池取一张可以写入的图片，4.4 以下只能复用大小完全相同并且没有采样缩放的图片
+     */
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private Bitmap takeReusable(int width, int height, boolean exactDecode) {
+        synchronized (mReusePool) {
+            for (int i = 0; i < mReusePool.size(); i++) {
+                Bitmap candidate = mReusePool.get(i);
+                boolean fits;
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                    // 同样大小的解码刚好放得下，取整不同放不下时由解码失败后的重试兜底
+                    fits = BitmapReuse.fitsAllocation(candidate.getAllocationByteCount(), width, height,
+                        BitmapReuse.ARGB_8888_BYTES);
+                } else {
+                    fits = BitmapReuse.fitsExact(candidate.getWidth(), candidate.getHeight(), width, height, exactDecode);
+                }
+                if (fits) {
+                    mReusePool.remove(i);
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Bitmap decodeStream(String path, BitmapFactory.Options options) {
+        InputStream stream = null;
+        try {
+            if (path.startsWith(ASSET_PREFIX)) {
+                stream = mContext.getAssets().open(path.substring(ASSET_PREFIX.length()));
+            } else {
+                stream = mContext.getContentResolver().openInputStream(Uri.parse(path));
+            }
+            return BitmapFactory.decodeStream(stream, null, options);
+        } catch (IOException e) {
+            // 图片不存在或者不可读，不显示
+            Log.w(TAG, "can not open " + path, e);
+            return null;
+        } finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                    // 关闭失败不影响解码结果
+                }
+            }
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static int byteCount(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    /**
+     * 缓存中图片占用的内存，字节
+     */
+    public long getCacheBytes() {
+        return mCacheBytes;
+    }
+
+    public int getCacheCount() {
+        return mCache.size();
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * 命中率，还没有加载过时返回 0
+     */
+    public float getHitRate() {
+        int total = mHitCount + mMissCount;
+        return total == 0 ? 0 : mHitCount / (float) total;
+    }
+
+    /**
+     * 通过 inBitmap 复用已有内存的解码次数
+     */
+    public int getReuseCount() {
+        synchronized (mReusePool) {
+            return mReuseCount;
+        }
+    }
+
+    /**
+     * 分配了新内存的解码次数
+     */
+    public int getAllocationCount() {
+        synchronized (mReusePool) {
+            return mAllocationCount;
+        }
+    }
+}
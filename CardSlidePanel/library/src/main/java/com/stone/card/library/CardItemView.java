@@ -1,17 +1,20 @@
 package com.stone.card.library;
 
-import android.animation.ObjectAnimator;
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.graphics.Canvas;
+import android.support.v4.view.AsyncLayoutInflater;
 import android.util.AttributeSet;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
 import android.widget.FrameLayout;
 
 import com.facebook.rebound.SimpleSpringListener;
 import com.facebook.rebound.Spring;
 import com.facebook.rebound.SpringConfig;
-import com.facebook.rebound.SpringSystem;
+import com.stone.card.core.CardStack;
 
 /**
  * 卡片View项
@@ -19,11 +22,77 @@ import com.facebook.rebound.SpringSystem;
  * @author xmuSistone
  */
 @SuppressLint("NewApi")
-public class CardItemView extends FrameLayout {
+public class CardItemView extends FrameLayout implements CardStack.Slot {
+    private static final SpringConfig SPRING_CONFIG = SpringConfig.fromBouncinessAndSpeed(15, 20);
+    /**
+     * 渐显动画的时长和每一级的延迟
+     */
+    private static final int FADE_DURATION = 360;
+    private static final int FADE_DELAY_STEP = 200;
+    private static final long NANOS_PER_MS = 1000000;
 
+    /**
+     * spring 由进程内共享的 {@link CardAnimationClock} 驱动，attach 时创建，detach 时销毁
+     */
     private Spring springX, springY;
     private CardSlidePanel parentView;
-    private ObjectAnimator alphaAnimator;
+    /**
+     * 一帧内位置是否已经变化，由 {@link CardAnimationClock} 统一回调
+     */
+    private boolean mPositionDirty = false;
+    /**
+     * 飞出动画
+     */
+    private boolean mFlying = false;
+    private int mFlyFromX, mFlyFromY, mFlyToX, mFlyToY;
+    private int mFlyDuration;
+    private long mFlyStartNanos;
+    /**
+     * 渐显动画
+     */
+    private boolean mFading = false;
+    private long mFadeDelayNanos;
+    private long mFadeStartNanos;
+    private int mLayoutResId;
+    /**
+     * 面板按 widthHeightRate 给出了固定大小，内容的 requestLayout 只在卡片内部重新 measure 和 layout
+     */
+    private boolean mFixedSize = false;
+    private boolean mSelfLayoutPosted = false;
+    private final Runnable mSelfLayout = new Runnable() {
+        @Override
+        public void run() {
+            mSelfLayoutPosted = false;
+            relayoutSelf();
+        }
+    };
+    /**
+     * 异步 inflate 时，内容准备好之前显示的占位 View
+     */
+    private View mPlaceholderView;
+    private int mPlaceholderResId;
+    private boolean mContentReady = false;
+    /**
+     * 内容还没有准备好时，等待绑定的数据 index
+     */
+    private int mPendingBindIndex = -1;
+    /**
+     * 在 {@link CardStack} 中的位置
+     */
+    private int mStackSlot = -1;
+    /**
+     * 为 true 时通过 translationX/Y 移动，layout 的位置保持不变
+     */
+    private boolean mMoveByTranslation = false;
+    /**
+     * 是否被 {@link LayerPolicy} 提升为硬件层
+     */
+    private boolean mLayerPromoted = false;
+    /**
+     * 快照模式下画缓存的位图，不遍历子 View，第一次进入快照模式时创建
+     */
+    private boolean mSnapshotMode = false;
+    private CardSnapshot mSnapshot;
 
     public CardItemView(Context context) {
         this(context, null);
@@ -35,43 +104,210 @@ public class CardItemView extends FrameLayout {
 
     public CardItemView(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
-        initSpring();
     }
 
-    private void initSpring() {
-        SpringConfig springConfig = SpringConfig.fromBouncinessAndSpeed(15, 20);
-        SpringSystem mSpringSystem = SpringSystem.create();
-        springX = mSpringSystem.createSpring().setSpringConfig(springConfig);
-        springY = mSpringSystem.createSpring().setSpringConfig(springConfig);
+    private final SimpleSpringListener mSpringListener = new SimpleSpringListener() {
+        @Override
+        public void onSpringUpdate(Spring spring) {
+            int pos = (int) spring.getCurrentValue();
+            if (spring == springX) {
+                setScreenX(pos);
+            } else {
+                setScreenY(pos);
+            }
+            // x、y 两个 spring 在同一帧内的变化只回调一次
+            CardAnimationClock.getInstance().markPositionChanged(CardItemView.this);
+        }
 
-        springX.addListener(new SimpleSpringListener() {
-            @Override
-            public void onSpringUpdate(Spring spring) {
-                int xPos = (int) spring.getCurrentValue();
-                setScreenX(xPos);
-                parentView.onViewPosChanged(CardItemView.this);
+        @Override
+        public void onSpringAtRest(Spring spring) {
+            if (parentView != null && !isAnimating()) {
+                parentView.onCardSettled(CardItemView.this);
             }
-        });
+        }
+    };
 
-        springY.addListener(new SimpleSpringListener() {
-            @Override
-            public void onSpringUpdate(Spring spring) {
-                int yPos = (int) spring.getCurrentValue();
-                setScreenY(yPos);
-                parentView.onViewPosChanged(CardItemView.this);
+    private final CardAnimationClock.FrameCallback mFrameCallback = new CardAnimationClock.FrameCallback() {
+        @Override
+        public boolean doAnimationFrame(long frameTimeNanos) {
+            if (mFlying) {
+                stepFly(frameTimeNanos);
             }
-        });
+            if (mFading) {
+                stepFade(frameTimeNanos);
+            }
+            // 飞出结束的回调中可能开始新的动画，所以以当前状态为准
+            return mFlying || mFading;
+        }
+    };
+
+    private void initSpring() {
+        CardAnimationClock clock = CardAnimationClock.getInstance();
+        springX = clock.createSpring().setSpringConfig(SPRING_CONFIG);
+        springY = clock.createSpring().setSpringConfig(SPRING_CONFIG);
+        springX.addListener(mSpringListener);
+        springY.addListener(mSpringListener);
+    }
+
+    private void destroySpring() {
+        if (springX != null) {
+            springX.destroy();
+            springY.destroy();
+            springX = null;
+            springY = null;
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (springX == null) {
+            initSpring();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // 共享的时钟是进程级别的，detach 后必须释放，否则会一直持有卡片
+        destroySpring();
+        cancelAnimations();
     }
 
     /**
      * 动画移动到某个位置
      */
     public void animTo(int xPos, int yPos) {
-        setCurrentSpringPos(getLeft(), getTop());
+        if (springX == null) {
+            initSpring();
+        }
+        setCurrentSpringPos(getScreenX(), getScreenY());
         springX.setEndValue(xPos);
         springY.setEndValue(yPos);
     }
 
+    /**
+     * 飞出动画，结束后回调 {@link CardSlidePanel#onCardFlyFinished(CardItemView)}
+     *
+     * @param duration 动画时长，毫秒
+     */
+    public void flyTo(int xPos, int yPos, int duration) {
+        stopSpring();
+        mFlyFromX = getScreenX();
+        mFlyFromY = getScreenY();
+        mFlyToX = xPos;
+        mFlyToY = yPos;
+        mFlyDuration = Math.max(1, duration);
+        mFlyStartNanos = -1;
+        mFlying = true;
+        CardAnimationClock.getInstance().addAnimation(mFrameCallback);
+    }
+
+    public boolean isFlying() {
+        return mFlying;
+    }
+
+    /**
+     * 是否正在回弹或者飞出
+     */
+    public boolean isAnimating() {
+        return mFlying || (springX != null && !(springX.isAtRest() && springY.isAtRest()));
+    }
+
+    /**
+     * 立即结束飞出动画，卡片直接到达终点
+     */
+    public void endFly() {
+        if (mFlying) {
+            finishFly();
+        }
+    }
+
+    /**
+     * 停止飞出动画，停在当前位置并且不回调面板
+     */
+    void cancelFly() {
+        mFlying = false;
+    }
+
+    private void stepFly(long frameTimeNanos) {
+        if (mFlyStartNanos < 0) {
+            mFlyStartNanos = frameTimeNanos;
+        }
+        float t = (frameTimeNanos - mFlyStartNanos) / (float) (mFlyDuration * NANOS_PER_MS);
+        if (t >= 1) {
+            finishFly();
+            return;
+        }
+        // 与 ViewDragHelper 相同的五次方减速曲线
+        t -= 1.0f;
+        float fraction = t * t * t * t * t + 1.0f;
+        setScreenX((int) (mFlyFromX + (mFlyToX - mFlyFromX) * fraction));
+        setScreenY((int) (mFlyFromY + (mFlyToY - mFlyFromY) * fraction));
+        CardAnimationClock.getInstance().markPositionChanged(this);
+    }
+
+    private void finishFly() {
+        mFlying = false;
+        setScreenX(mFlyToX);
+        setScreenY(mFlyToY);
+        // 终点位置先回调，再通知飞出结束
+        CardAnimationClock.getInstance().removeDirtyCard(this);
+        dispatchPositionChanged();
+        if (parentView != null) {
+            parentView.onCardFlyFinished(this);
+        }
+    }
+
+    private void stepFade(long frameTimeNanos) {
+        if (mFadeStartNanos < 0) {
+            mFadeStartNanos = frameTimeNanos + mFadeDelayNanos;
+        }
+        if (frameTimeNanos < mFadeStartNanos) {
+            return;
+        }
+        float t = (frameTimeNanos - mFadeStartNanos) / (float) (FADE_DURATION * NANOS_PER_MS);
+        if (t >= 1) {
+            setAlpha(1);
+            mFading = false;
+            return;
+        }
+        // 与 ObjectAnimator 默认的 AccelerateDecelerateInterpolator 一致
+        setAlpha((float) (Math.cos((t + 1) * Math.PI) / 2.0f) + 0.5f);
+    }
+
+    private void stopSpring() {
+        if (springX != null) {
+            springX.setAtRest();
+            springY.setAtRest();
+        }
+    }
+
+    private void cancelAnimations() {
+        mFlying = false;
+        mFading = false;
+        CardAnimationClock clock = CardAnimationClock.getInstance();
+        clock.removeAnimation(mFrameCallback);
+        clock.removeDirtyCard(this);
+    }
+
+    boolean isPositionDirty() {
+        return mPositionDirty;
+    }
+
+    void setPositionDirty(boolean dirty) {
+        mPositionDirty = dirty;
+    }
+
+    /**
+     * 通知面板位置变化，由 {@link CardAnimationClock} 每帧最多调用一次
+     */
+    void dispatchPositionChanged() {
+        if (parentView != null) {
+            parentView.onViewPosChanged(this);
+        }
+    }
+
     /**
      * 设置当前spring位置
      */
@@ -81,26 +317,325 @@ public class CardItemView extends FrameLayout {
     }
 
     public void setScreenX(int screenX) {
-        this.offsetLeftAndRight(screenX - getLeft());
+        if (mMoveByTranslation) {
+            setTranslationX(screenX - getLeft());
+        } else {
+            this.offsetLeftAndRight(screenX - getLeft());
+        }
     }
 
     public void setScreenY(int screenY) {
-        this.offsetTopAndBottom(screenY - getTop());
+        if (mMoveByTranslation) {
+            setTranslationY(screenY - getTop());
+        } else {
+            this.offsetTopAndBottom(screenY - getTop());
+        }
+    }
+
+    /**
+     * 卡片当前在屏幕上的 x 位置，包含 translation
+     */
+    public int getScreenX() {
+        return mMoveByTranslation ? getLeft() + (int) getTranslationX() : getLeft();
+    }
+
+    public int getScreenY() {
+        return mMoveByTranslation ? getTop() + (int) getTranslationY() : getTop();
+    }
+
+    /**
+     * ViewDragHelper 拖动时直接 offset 了卡片的 layout 位置，translation 模式下把这段位移转移到 translation 上
+     */
+    void commitDragOffset(int dx, int dy) {
+        if (!mMoveByTranslation) {
+            return;
+        }
+        offsetLeftAndRight(-dx);
+        offsetTopAndBottom(-dy);
+        setTranslationX(getTranslationX() + dx);
+        setTranslationY(getTranslationY() + dy);
+    }
+
+    void setMoveByTranslation(boolean moveByTranslation) {
+        if (mMoveByTranslation == moveByTranslation) {
+            return;
+        }
+        stopSpring();
+        mMoveByTranslation = moveByTranslation;
+        setTranslationX(0);
+        setTranslationY(0);
     }
 
     public void setParentView(CardSlidePanel parentView) {
         this.parentView = parentView;
     }
 
+    void setFixedSize(boolean fixedSize) {
+        mFixedSize = fixedSize;
+    }
+
+    @Override
+    public void requestLayout() {
+        // 构造过程中 mSelfLayout 还没有初始化
+        if (!mFixedSize || parentView == null || getParent() == null || mSelfLayout == null) {
+            super.requestLayout();
+            return;
+        }
+        // 大小由面板决定，不需要通知面板，也不会打断其他卡片的拖动和动画
+        forceLayout();
+        if (!mSelfLayoutPosted) {
+            mSelfLayoutPosted = post(mSelfLayout);
+            if (!mSelfLayoutPosted) {
+                super.requestLayout();
+            }
+        }
+    }
+
+    private void relayoutSelf() {
+        // 期间面板已经 layout 过，或者卡片已经被回收
+        if (!isLayoutRequested() || getParent() == null) {
+            return;
+        }
+        measure(MeasureSpec.makeMeasureSpec(getMeasuredWidth(), MeasureSpec.EXACTLY),
+            MeasureSpec.makeMeasureSpec(getMeasuredHeight(), MeasureSpec.EXACTLY));
+        layout(getLeft(), getTop(), getRight(), getBottom());
+    }
+
+    @Override
+    public void setAlpha(float alpha) {
+        boolean wasTransparent = getAlpha() <= 0;
+        super.setAlpha(alpha);
+        // 绘制裁剪会跳过透明的卡片，渐显时需要面板重新记录绘制
+        if (wasTransparent && alpha > 0 && parentView != null) {
+            parentView.invalidate();
+        }
+    }
+
     public void onStartDragging() {
-        springX.setAtRest();
-        springY.setAtRest();
+        stopSpring();
     }
 
     public void bindLayoutResId(int layoutResId) {
+        mLayoutResId = layoutResId;
         LayoutInflater inflater = LayoutInflater.from(getContext());
         View view = inflater.inflate(layoutResId, null);
         addView(view, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+        mContentReady = true;
+    }
+
+    /**
+     * 在后台线程 inflate 布局，完成之前先显示一个轻量的占位 View
+     */
+    public void bindLayoutResIdAsync(AsyncLayoutInflater inflater, int layoutResId) {
+        mLayoutResId = layoutResId;
+        mContentReady = false;
+        mPlaceholderView = new View(getContext());
+        if (mPlaceholderResId != 0) {
+            mPlaceholderView.setBackgroundResource(mPlaceholderResId);
+        }
+        addView(mPlaceholderView, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+
+        inflater.inflate(layoutResId, null, new AsyncLayoutInflater.OnInflateFinishedListener() {
+            @Override
+            public void onInflateFinished(View view, int resid, ViewGroup parent) {
+                removeView(mPlaceholderView);
+                mPlaceholderView = null;
+                addView(view, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+                mContentReady = true;
+                invalidateSnapshot();
+                if (parentView != null) {
+                    parentView.onCardContentReady(CardItemView.this);
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置异步 inflate 时占位 View 的背景
+     */
+    public void setPlaceholderResId(int placeholderResId) {
+        mPlaceholderResId = placeholderResId;
+        if (mPlaceholderView != null && placeholderResId != 0) {
+            mPlaceholderView.setBackgroundResource(placeholderResId);
+        }
+    }
+
+    /**
+     * 布局是否已经 inflate 完成，没有完成时不能绑定数据
+     */
+    public boolean isContentReady() {
+        return mContentReady;
+    }
+
+    int getPendingBindIndex() {
+        return mPendingBindIndex;
+    }
+
+    void setPendingBindIndex(int index) {
+        mPendingBindIndex = index;
+    }
+
+    /**
+     * 设置是否画缓存的快照，由面板按卡片所在的层切换
+     */
+    void setSnapshotMode(boolean snapshotMode) {
+        if (mSnapshotMode == snapshotMode) {
+            return;
+        }
+        mSnapshotMode = snapshotMode;
+        if (snapshotMode) {
+            if (mSnapshot == null) {
+                mSnapshot = new CardSnapshot();
+            }
+        } else if (mSnapshot != null) {
+            mSnapshot.release();
+        }
+        invalidate();
+    }
+
+    boolean isSnapshotMode() {
+        return mSnapshotMode;
+    }
+
+    /**
+     * 快照模式下卡片内容变化后需要调用，下一次绘制时重新生成快照。
+     * 重新绑定数据和 {@link CardImageLoader} 加载的图片会自动调用，其他异步变化的内容需要自己调用
+     */
+    public void invalidateSnapshot() {
+        if (mSnapshotMode) {
+            mSnapshot.invalidate();
+            invalidate();
+        }
+    }
+
+    /**
+     * view 所在卡片的快照失效
+     */
+    static void invalidateSnapshotOf(View view) {
+        ViewParent parent = view.getParent();
+        while (parent instanceof View) {
+            if (parent instanceof CardItemView) {
+                ((CardItemView) parent).invalidateSnapshot();
+                return;
+            }
+            parent = parent.getParent();
+        }
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        int width = getWidth();
+        int height = getHeight();
+        if (!mSnapshotMode || width <= 0 || height <= 0) {
+            super.dispatchDraw(canvas);
+            return;
+        }
+        if (!mSnapshot.isValid(width, height)) {
+            super.dispatchDraw(mSnapshot.beginCapture(width, height));
+            mSnapshot.endCapture();
+        }
+        mSnapshot.draw(canvas);
+    }
+
+    boolean isLayerPromoted() {
+        return mLayerPromoted;
+    }
+
+    void setLayerPromoted(boolean layerPromoted) {
+        mLayerPromoted = layerPromoted;
+    }
+
+    @Override
+    public int getStackSlot() {
+        return mStackSlot;
+    }
+
+    @Override
+    public void setStackSlot(int slot) {
+        mStackSlot = slot;
+    }
+
+    public int getLayoutResId() {
+        return mLayoutResId;
+    }
+
+    /**
+     * 代替另一种类型的卡片留在卡片栈中，大小、位置、显示状态和进行中的动画与它一致
+     */
+    void takeOverFrom(CardItemView other) {
+        measure(MeasureSpec.makeMeasureSpec(other.getMeasuredWidth(), MeasureSpec.EXACTLY),
+            MeasureSpec.makeMeasureSpec(other.getMeasuredHeight(), MeasureSpec.EXACTLY));
+        layout(other.getLeft(), other.getTop(), other.getRight(), other.getBottom());
+        setTranslationX(other.getTranslationX());
+        setTranslationY(other.getTranslationY());
+        setScaleX(other.getScaleX());
+        setScaleY(other.getScaleY());
+        setAlpha(other.getAlpha());
+        setVisibility(other.getVisibility());
+        setSnapshotMode(other.isSnapshotMode());
+        if (other.mLayerPromoted && getLayerType() == LAYER_TYPE_NONE) {
+            // LayerPolicy 在所有卡片停止后还原
+            setLayerType(LAYER_TYPE_HARDWARE, null);
+            mLayerPromoted = true;
+        }
+        takeOverAnimations(other);
+    }
+
+    /**
+     * 接着 other 没有完成的回弹、飞出和渐显，other 离开面板时会取消自己的动画
+     */
+    private void takeOverAnimations(CardItemView other) {
+        if (other.springX != null && !(other.springX.isAtRest() && other.springY.isAtRest())) {
+            if (springX == null) {
+                initSpring();
+            }
+            takeOverSpring(springX, other.springX);
+            takeOverSpring(springY, other.springY);
+        }
+        if (other.mFlying) {
+            mFlyFromX = other.mFlyFromX;
+            mFlyFromY = other.mFlyFromY;
+            mFlyToX = other.mFlyToX;
+            mFlyToY = other.mFlyToY;
+            mFlyDuration = other.mFlyDuration;
+            mFlyStartNanos = other.mFlyStartNanos;
+            mFlying = true;
+        }
+        if (other.mFading) {
+            mFadeDelayNanos = other.mFadeDelayNanos;
+            mFadeStartNanos = other.mFadeStartNanos;
+            mFading = true;
+        }
+        if (mFlying || mFading) {
+            CardAnimationClock.getInstance().addAnimation(mFrameCallback);
+        }
+    }
+
+    private static void takeOverSpring(Spring spring, Spring from) {
+        spring.setCurrentValue(from.getCurrentValue());
+        spring.setEndValue(from.getEndValue());
+        spring.setVelocity(from.getVelocity());
+    }
+
+    /**
+     * 回收到 {@link CardViewPool} 之前重置状态
+     */
+    void resetForRecycle() {
+        cancelAnimations();
+        stopSpring();
+        parentView = null;
+        mPendingBindIndex = -1;
+        if (mLayerPromoted) {
+            setLayerType(LAYER_TYPE_NONE, null);
+            mLayerPromoted = false;
+        }
+        setAlpha(1);
+        setTranslationX(0);
+        setTranslationY(0);
+        setScaleX(1);
+        setScaleY(1);
+        setVisibility(View.VISIBLE);
+        setSnapshotMode(false);
     }
 
     public void setVisibilityWithAnimation(final int visibility, int delayIndex) {
@@ -108,14 +643,10 @@ public class CardItemView extends FrameLayout {
             setAlpha(0);
             setVisibility(visibility);
 
-            if (null != alphaAnimator) {
-                alphaAnimator.cancel();
-            }
-            alphaAnimator = ObjectAnimator.ofFloat(this, "alpha",
-                    0.0f, 1.0f);
-            alphaAnimator.setDuration(360);
-            alphaAnimator.setStartDelay(delayIndex * 200);
-            alphaAnimator.start();
+            mFadeDelayNanos = delayIndex * FADE_DELAY_STEP * NANOS_PER_MS;
+            mFadeStartNanos = -1;
+            mFading = true;
+            CardAnimationClock.getInstance().addAnimation(mFrameCallback);
         }
     }
 }
@@ -0,0 +1,189 @@
+package com.stone.card.library;
+
+import android.view.View;
+
+import com.stone.card.core.CardStack;
+import com.stone.card.core.StackLinkage;
+
+/**
+ * 卡片栈每一层的位置和缩放，以及前面的卡片移动时带动下面的卡片
+ * <p>
+ * 拖动和 spring 的位置变化只标记联动需要更新，在 {@link CardAnimationClock} 的帧末尾按带动的卡片最新的位置执行一次，
+ * 触摸事件再密集，每一帧也只调整一次下面的卡片。
+ *
+ * @author im_dsd
+ */
+final class CardLinkage implements Runnable {
+    private final CardStack<CardItemView> mCardStack;
+    private final CardPanelStats mStats;
+    /**
+     * 顶层卡片的初始位置和每一层的垂直偏移，layout 之后更新
+     */
+    private int mInitCenterViewX = 0;
+    private int mInitCenterViewY = 0;
+    private int mYOffset = 0;
+    /**
+     * 这一帧最后一次带动下面卡片的卡片，以及这一帧合并的位置变化次数
+     */
+    private CardItemView mDriver;
+    private View mCapturedView;
+    private int mPendingRequests = 0;
+
+    CardLinkage(CardStack<CardItemView> cardStack, CardPanelStats stats) {
+        mCardStack = cardStack;
+        mStats = stats;
+    }
+
+    void setGeometry(int initCenterViewX, int initCenterViewY, int yOffset) {
+        mInitCenterViewX = initCenterViewX;
+        mInitCenterViewY = initCenterViewY;
+        mYOffset = yOffset;
+    }
+
+    /**
+     * 按宽高比给每一张卡片固定的大小
+     */
+    void measureCards(int cardWidth, float widthHeightRate) {
+        int widthSpec = View.MeasureSpec.makeMeasureSpec(cardWidth, View.MeasureSpec.EXACTLY);
+        int heightSpec = View.MeasureSpec.makeMeasureSpec(Math.round(cardWidth / widthHeightRate), View.MeasureSpec.EXACTLY);
+        for (int i = 0; i < mCardStack.size(); i++) {
+            mCardStack.get(i).measure(widthSpec, heightSpec);
+        }
+    }
+
+    /**
+     * 按测量的大小把卡片 layout 在面板水平居中的初始位置，缩放以底边中点为中心
+     */
+    void layoutCard(CardItemView itemView, int panelWidth, int top) {
+        int width = itemView.getMeasuredWidth();
+        int height = itemView.getMeasuredHeight();
+        int left = (panelWidth - width) / 2;
+        itemView.layout(left, top, left + width, top + height);
+        itemView.setPivotY(height);
+        itemView.setPivotX(width / 2);
+    }
+
+    /**
+     * 把卡片放到某一层的位置和缩放，调用时卡片的 layout 位置必须是初始位置
+     */
+    void applyLayerTransform(CardItemView itemView, int layer) {
+        layer = clampLayer(layer);
+        itemView.setScreenX(itemView.getLeft());
+        itemView.setScreenY(itemView.getTop() + mYOffset * layer);
+        applyLayerScale(itemView, layer);
+    }
+
+    /**
+     * 把卡片移回某一层，不要求 layout 位置
+     */
+    void moveToLayer(CardItemView itemView, int layer) {
+        layer = clampLayer(layer);
+        itemView.setScreenX(mInitCenterViewX);
+        itemView.setScreenY(mInitCenterViewY + mYOffset * layer);
+        applyLayerScale(itemView, layer);
+    }
+
+    /**
+     * 卡片位置改变，在这一帧末尾带动它下面的卡片
+     *
+     * @param capturedView 正在被拖动的卡片
+     */
+    void onCardMoved(CardItemView changedView, View capturedView) {
+        if (driverLayer(changedView, capturedView) < 0) {
+            return;
+        }
+        mDriver = changedView;
+        mCapturedView = capturedView;
+        if (mPendingRequests++ == 0) {
+            CardAnimationClock.getInstance().runAtFrameEnd(this);
+        }
+    }
+
+    /**
+     * 帧末尾按带动的卡片最新的位置执行联动，卡片栈在这一帧内变化过时重新判断
+     */
+    @Override
+    public void run() {
+        CardItemView driver = mDriver;
+        int requests = mPendingRequests;
+        int layer = driverLayer(driver, mCapturedView);
+        mDriver = null;
+        mCapturedView = null;
+        mPendingRequests = 0;
+        if (layer >= 0) {
+            mStats.linkageFrame(requests);
+            processLinkageView(driver, layer);
+        }
+    }
+
+    /**
+     * @return 卡片可以带动下面的卡片时返回它所在的层，否则返回 -1
+     */
+    private int driverLayer(CardItemView changedView, View capturedView) {
+        // 调用 offsetLeftAndRight 导致 viewPosition 改变，会调到此处，所以此处对index做保护处理
+        int layer = mCardStack.layerOf(changedView);
+        if (layer < 0 || layer + 2 >= mCardStack.size()) {
+            // 已经快没有数据了
+            return -1;
+        }
+        int front = mCardStack.releasedCount();
+        if (layer < front) {
+            // 飞出中的卡片只有最后一张带动下面的卡片，下一张卡片被拖动或者在回弹时由它自己带动
+            CardItemView frontView = mCardStack.get(front);
+            if (layer != front - 1 || frontView.isAnimating() || capturedView == frontView) {
+                return -1;
+            }
+        }
+        return layer;
+    }
+
+    /**
+     * 卡片View位置改变，底层的位置需要调整
+     *
+     * @param changedView  带动下面的卡片的view
+     * @param changedLayer changedView 所在的层
+     */
+    private void processLinkageView(CardItemView changedView, int changedLayer) {
+        long start = mStats.begin(CardPanelStats.OP_LINKAGE);
+        float rate = StackLinkage.dragRate(changedView.getScreenX() - mInitCenterViewX,
+            changedView.getScreenY() - mInitCenterViewY);
+
+        // 越靠下的卡片联动得越晚，每一层比上一层晚 StackLinkage.RATE_STEP
+        float layerRate = 0;
+        for (int layer = 1; changedLayer + layer < mCardStack.size() - 1; layer++) {
+            layerRate = StackLinkage.layerRate(rate, layer);
+            adjustLinkageViewItem(changedLayer, layerRate, layer);
+        }
+
+        // 最底层备用的卡片跟随最后一层可见卡片渐显
+        CardItemView bottomCardView = mCardStack.bottom();
+        bottomCardView.setAlpha(layerRate);
+        mStats.end(CardPanelStats.OP_LINKAGE, start);
+    }
+
+    /**
+     * 由 index 对应 view 变成 index - 1 对应的 view
+     */
+    private void adjustLinkageViewItem(int changeIndex, float rate, int index) {
+        int offset = StackLinkage.layerOffset(index, rate, mYOffset);
+        float scale = StackLinkage.layerScale(index, rate);
+
+        CardItemView adjustView = mCardStack.get(changeIndex + index);
+        adjustView.setScreenY(offset + mInitCenterViewY);
+        adjustView.setScaleX(scale);
+        adjustView.setScaleY(scale);
+    }
+
+    /**
+     * 最底层备用的卡片和倒数第二层重叠
+     */
+    private int clampLayer(int layer) {
+        return Math.min(layer, mCardStack.size() - 2);
+    }
+
+    private static void applyLayerScale(CardItemView itemView, int layer) {
+        float scale = StackLinkage.layerScale(layer, 0);
+        itemView.setScaleX(scale);
+        itemView.setScaleY(scale);
+    }
+}
@@ -0,0 +1,78 @@
+package com.stone.card.library;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.v4.os.ParcelableCompat;
+import android.support.v4.os.ParcelableCompatCreatorCallbacks;
+import android.support.v4.view.AbsSavedState;
+
+import com.stone.card.core.DeckEngine;
+
+/**
+ * {@link CardSlidePanel} 保存的状态：顶层卡片的位置，以及 Adapter 有稳定 id 时顶层卡片的 id
+ * <p>
+ * 飞出中的卡片已经回调过 onCardVanish，按已经划走保存；排队中还没有开始飞出的滑动不保存。
+ * 上一张卡片由位置决定，{@link CardSlidePanel#rewind()} 不需要额外的状态，保留的卡片会重新绑定。
+ *
+ * @author im_dsd
+ */
+public class CardPanelSavedState extends AbsSavedState {
+    private int mShowing = 0;
+    private long mTopItemId = DeckEngine.NO_ID;
+
+    CardPanelSavedState(Parcelable superState) {
+        super(superState);
+    }
+
+    CardPanelSavedState(Parcel in, ClassLoader loader) {
+        super(in, loader);
+        mShowing = in.readInt();
+        mTopItemId = in.readLong();
+    }
+
+    /**
+     * @param pending 还没有生效的恢复状态，不为 null 时原样保存
+     * @param showing 顶层卡片的位置，飞出中的卡片已经算作划走
+     */
+    static CardPanelSavedState create(Parcelable superState, CardPanelSavedState pending,
+                                      CardAdapter adapter, int showing) {
+        CardPanelSavedState state = new CardPanelSavedState(superState);
+        if (pending != null) {
+            state.mShowing = pending.mShowing;
+            state.mTopItemId = pending.mTopItemId;
+        } else if (adapter != null) {
+            state.mShowing = showing;
+            state.mTopItemId = adapter.hasStableIds() && showing < adapter.getCount()
+                ? adapter.getItemId(showing) : DeckEngine.NO_ID;
+        }
+        return state;
+    }
+
+    int getShowing() {
+        return mShowing;
+    }
+
+    long getTopItemId() {
+        return mTopItemId;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        super.writeToParcel(dest, flags);
+        dest.writeInt(mShowing);
+        dest.writeLong(mTopItemId);
+    }
+
+    public static final Parcelable.Creator<CardPanelSavedState> CREATOR = ParcelableCompat.newCreator(
+        new ParcelableCompatCreatorCallbacks<CardPanelSavedState>() {
+            @Override
+            public CardPanelSavedState createFromParcel(Parcel in, ClassLoader loader) {
+                return new CardPanelSavedState(in, loader);
+            }
+
+            @Override
+            public CardPanelSavedState[] newArray(int size) {
+                return new CardPanelSavedState[size];
+            }
+        });
+}
@@ -0,0 +1,217 @@
+package com.stone.card.library;
+
+import android.support.v4.os.TraceCompat;
+
+/**
+ * 面板热点路径的耗时统计，通过 {@link CardSlidePanel#getStats()} 获取
+ * <p>
+ * 开启后，每个操作都会包在同名的 trace section 中（systrace / Perfetto 中可见），
+ * 并累计次数、总耗时、最大耗时，以及按微秒取 log2 分桶的耗时直方图。
+ * 默认关闭，关闭时每个操作只多一次布尔判断。只能在主线程使用。
+ *
+ * @author im_dsd
+ */
+public final class CardPanelStats {
+    /**
+     * {@link CardAdapter#bindView(android.view.View, int)}
+     */
+    public static final int OP_BIND = 0;
+    /**
+     * 卡片布局同步 inflate，复用池命中时不计入
+     */
+    public static final int OP_INFLATE = 1;
+    /**
+     * 卡片飞出后的重新排序，包含新卡片的数据绑定
+     */
+    public static final int OP_REORDER = 2;
+    /**
+     * 面板的 onLayout
+     */
+    public static final int OP_LAYOUT = 3;
+    /**
+     * 拖动时下层卡片的联动
+     */
+    public static final int OP_LINKAGE = 4;
+    public static final int OP_COUNT = 5;
+    /**
+     * 直方图的桶数，第 i 个桶统计 [2^(i-1), 2^i) 微秒的耗时，第 0 个桶统计不足 1 微秒的耗时，
+     * 最后一个桶包含所有更长的耗时
+     */
+    public static final int BUCKET_COUNT = 22;
+
+    private static final String[] SECTION_NAMES = {
+        "CardSlide:bind", "CardSlide:inflate", "CardSlide:reorder", "CardSlide:layout", "CardSlide:linkage"
+    };
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private boolean mEnabled = false;
+    private final long[] mCounts = new long[OP_COUNT];
+    private final long[] mTotalNanos = new long[OP_COUNT];
+    private final long[] mMaxNanos = new long[OP_COUNT];
+    private final long[][] mBuckets = new long[OP_COUNT][BUCKET_COUNT];
+    /**
+     * 联动的请求次数、合并掉的请求次数，以及最近一帧和单帧最多的请求次数
+     */
+    private long mLinkageRequests = 0;
+    private long mLinkageCoalesced = 0;
+    private int mLastFrameLinkageRequests = 0;
+    private int mMaxFrameLinkageRequests = 0;
+
+    CardPanelStats() {
+    }
+
+    /**
+     * 运行时开关统计和 trace section
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * 开始一个操作
+     *
+     * @return 开始时间，没有开启时返回 -1，需要原样传给 {@link #end(int, long)}
+     */
+    long begin(int op) {
+        if (!mEnabled) {
+            return -1;
+        }
+        TraceCompat.beginSection(SECTION_NAMES[op]);
+        return System.nanoTime();
+    }
+
+    void end(int op, long startNanos) {
+        if (startNanos < 0) {
+            return;
+        }
+        long duration = System.nanoTime() - startNanos;
+        TraceCompat.endSection();
+        mCounts[op]++;
+        mTotalNanos[op] += duration;
+        if (duration > mMaxNanos[op]) {
+            mMaxNanos[op] = duration;
+        }
+        mBuckets[op][bucketOf(duration)]++;
+    }
+
+    /**
+     * 一帧内的 requests 次位置变化合并成了一次联动
+     */
+    void linkageFrame(int requests) {
+        if (!mEnabled) {
+            return;
+        }
+        mLinkageRequests += requests;
+        mLinkageCoalesced += requests - 1;
+        mLastFrameLinkageRequests = requests;
+        mMaxFrameLinkageRequests = Math.max(mMaxFrameLinkageRequests, requests);
+    }
+
+    /**
+     * 结束 trace section，但不计入统计
+     */
+    void cancel(long startNanos) {
+        if (startNanos >= 0) {
+            TraceCompat.endSection();
+        }
+    }
+
+    private static int bucketOf(long durationNanos) {
+        long micros = durationNanos / NANOS_PER_MICRO;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }
+
+    public long getCount(int op) {
+        return mCounts[op];
+    }
+
+    public long getTotalNanos(int op) {
+        return mTotalNanos[op];
+    }
+
+    public long getMaxNanos(int op) {
+        return mMaxNanos[op];
+    }
+
+    /**
+     * 某个操作落在第 bucket 个桶中的次数
+     */
+    public long getBucketCount(int op, int bucket) {
+        return mBuckets[op][bucket];
+    }
+
+    /**
+     * 引起联动的位置变化次数，每一帧合并成一次 {@link #OP_LINKAGE}
+     */
+    public long getLinkageRequestCount() {
+        return mLinkageRequests;
+    }
+
+    /**
+     * 被合并掉、没有单独执行联动的位置变化次数
+     */
+    public long getCoalescedLinkageCount() {
+        return mLinkageCoalesced;
+    }
+
+    /**
+     * 最近一次联动的那一帧合并了多少次位置变化
+     */
+    public int getLastFrameLinkageRequests() {
+        return mLastFrameLinkageRequests;
+    }
+
+    public int getMaxFrameLinkageRequests() {
+        return mMaxFrameLinkageRequests;
+    }
+
+    /**
+     * 第 bucket 个桶的上界（不包含），单位微秒
+     */
+    public static long getBucketUpperBoundMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    public static String getOperationName(int op) {
+        return SECTION_NAMES[op];
+    }
+
+    /**
+     * 清空所有统计数据
+     */
+    public void reset() {
+        for (int op = 0; op < OP_COUNT; op++) {
+            mCounts[op] = 0;
+            mTotalNanos[op] = 0;
+            mMaxNanos[op] = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                mBuckets[op][bucket] = 0;
+            }
+        }
+        mLinkageRequests = 0;
+        mLinkageCoalesced = 0;
+        mLastFrameLinkageRequests = 0;
+        mMaxFrameLinkageRequests = 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CardPanelStats{");
+        for (int op = 0; op < OP_COUNT; op++) {
+            long count = mCounts[op];
+            builder.append(op == 0 ? "" : ", ").append(SECTION_NAMES[op])
+                .append(": count=").append(count)
+                .append(" avg=").append(count == 0 ? 0 : mTotalNanos[op] / count / NANOS_PER_MICRO)
+                .append("us max=").append(mMaxNanos[op] / NANOS_PER_MICRO).append("us");
+        }
+        builder.append(", linkage requests=").append(mLinkageRequests)
+            .append(" coalesced=").append(mLinkageCoalesced)
+            .append(" maxPerFrame=").append(mMaxFrameLinkageRequests);
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,111 @@
+package com.stone.card.library;
+
+import android.view.View;
+
+import com.stone.card.core.CardStack;
+import com.stone.card.core.DeckEngine;
+
+/**
+ * {@link CardSlidePanel#rewind()} 的实现：保留最近飞出的卡片，以及让上一张卡片回到顶层
+ * <p>
+ * 保留的卡片从面板中移除，由复用池中的另一张卡片代替它留在卡片栈的底层；
+ * 没有保留的卡片时，最底层备用的卡片重新绑定上一张的数据后从左侧回来。
+ *
+ * @author im_dsd
+ */
+final class CardRewinder {
+    private final CardSlidePanel mPanel;
+    private final DeckEngine<CardItemView> mDeck;
+    private final CardStack<CardItemView> mCardStack;
+    private final CardBinder mBinder;
+    private final RewindCache mCache;
+
+    CardRewinder(CardSlidePanel panel, DeckEngine<CardItemView> deck, CardBinder binder, int capacity) {
+        mPanel = panel;
+        mDeck = deck;
+        mCardStack = deck.getStack();
+        mBinder = binder;
+        mCache = new RewindCache(capacity);
+    }
+
+    int getCapacity() {
+        return mCache.getCapacity();
+    }
+
+    void setCapacity(int capacity) {
+        mCache.setCapacity(capacity);
+        while (mCache.size() > mCache.getCapacity()) {
+            mBinder.release(mCache.evictOldest());
+        }
+    }
+
+    /**
+     * 飞出的卡片回到底层之前调用，需要保留时返回代替它的卡片，否则返回 null
+     */
+    CardItemView retain(CardItemView changedView, CardLinkage linkage, int top) {
+        if (mCache.getCapacity() <= 0) {
+            return null;
+        }
+        CardItemView evicted = mCache.retain(changedView, mPanel.getAdapter().getItem(mDeck.getShowing()));
+        if (evicted != null) {
+            // 先归还，复用池可以马上把它取出来
+            mBinder.release(evicted);
+        }
+        CardItemView itemView = mPanel.acquireCardView(mDeck.getShowing() + mCardStack.size());
+        // 复用池中同样大小的卡片不需要重新 measure
+        if (itemView.isLayoutRequested() || itemView.getMeasuredWidth() != changedView.getMeasuredWidth()
+            || itemView.getMeasuredHeight() != changedView.getMeasuredHeight()) {
+            itemView.measure(View.MeasureSpec.makeMeasureSpec(changedView.getMeasuredWidth(), View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(changedView.getMeasuredHeight(), View.MeasureSpec.EXACTLY));
+        }
+        linkage.layoutCard(itemView, mPanel.getWidth(), top);
+        return itemView;
+    }
+
+    /**
+     * 上一张卡片放回顶层，调用前飞出中的卡片已经完成
+     *
+     * @param enterX 没有保留的卡片时，回来的卡片的起点
+     * @return 回到顶层的卡片，还有卡片在回弹时返回 null
+     */
+    CardItemView rewind(int enterX, int enterY) {
+        for (int i = 0; i < mCardStack.size(); i++) {
+            if (mCardStack.get(i).isAnimating()) {
+                return null;
+            }
+        }
+        CardItemView card;
+        boolean needsBind = true;
+        if (mCache.isEmpty()) {
+            card = mCardStack.bottom();
+            mPanel.detachCard(card);
+            card.setScreenX(enterX);
+            card.setScreenY(enterY);
+            card.setScaleX(1);
+            card.setScaleY(1);
+        } else {
+            needsBind = mCache.peekItem() != mPanel.getAdapter().getItem(mDeck.getShowing() - 1);
+            card = mCache.pop();
+        }
+        // 放到最上面，layout 位置不变，仍然停在飞出的终点
+        mPanel.attachCard(card, -1);
+        card.setAlpha(1);
+        card.setVisibility(View.VISIBLE);
+        CardItemView displaced = mDeck.rewind(card, needsBind);
+        if (displaced != null) {
+            mPanel.detachCard(displaced);
+            mBinder.release(displaced);
+        }
+        // 重新绑定时可能换成了另一种类型的卡片
+        return mCardStack.top();
+    }
+
+    /**
+     * 卡片栈重建时归还所有保留的卡片
+     */
+    void clear() {
+        while (!mCache.isEmpty()) {
+            mBinder.release(mCache.pop());
+        }
+    }
+}
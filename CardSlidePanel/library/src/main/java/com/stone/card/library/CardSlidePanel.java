@@ -3,24 +3,21 @@ package com.stone.card.library;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.database.DataSetObserver;
+import android.graphics.Canvas;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.os.Parcelable;
 import android.support.v4.view.GestureDetectorCompat;
-import android.support.v4.view.ViewCompat;
 import android.support.v4.widget.ViewDragHelper;
 import android.util.AttributeSet;
-import android.view.GestureDetector.SimpleOnGestureListener;
 import android.view.MotionEvent;
 import android.view.View;
-import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.ViewParent;
-import android.view.ViewTreeObserver;
 
-import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.List;
+import com.stone.card.core.CardStack;
+import com.stone.card.core.DeckEngine;
+import com.stone.card.core.ReleaseTrajectory;
 
 /**
  * 卡片滑动面板，主要逻辑实现类
@@ -30,13 +27,12 @@ import java.util.List;
 @SuppressLint({"HandlerLeak", "NewApi", "ClickableViewAccessibility"})
 public class CardSlidePanel extends ViewGroup implements CardSlideView {
     /**
-     * 存放的是每一层的 view，从顶到底
+     * 卡片栈的状态：当前显示的位置、每一层的 view（从顶到底）、飞出中的 view、按钮锁，
+     * 同时接收 adapter 的数据变化
      */
-    private List<CardItemView> mViewList = new ArrayList<>();
-    /**
-     * 手指松开后存放的 view 列表
-     */
-    private List<View> mReleasedViewList = new ArrayList<>();
+    private final PanelDeckHost mDeckHost = new PanelDeckHost(this);
+    private final DeckEngine<CardItemView> mDeck = mDeckHost.getEngine();
+    private final CardStack<CardItemView> mCardStack = mDeck.getStack();
     /**
      * 拖拽工具类
      * 这个跟原生的ViewDragHelper差不多，我仅仅只是修改了Interpolator
@@ -53,17 +49,26 @@ public class CardSlidePanel extends ViewGroup implements CardSlideView {
     private int mAllWidth = 0;
     private int mAllHeight = 0;
     /**
-     * 每一个子 View 对应的宽度
+     * 卡片的宽高比，大于 0 时卡片是固定大小，内容变化引起的 layout 不会传到面板
      */
-    private int mChildWith = 0;
+    private float mWidthHeightRate = 0;
     /**
-     * view 叠加缩放的步长
+     * 还没有拿到尺寸时 setAdapter 等需要绑定的操作，在下一次 onMeasure 中绑定
      */
-    private static final float SCALE_STEP = 0.08f;
+    private boolean mBindPending = false;
     /**
-     * 水平距离 + 垂直距离
+     * {@link #onRestoreInstanceState(Parcelable)} 恢复的位置，下一次建立卡片栈时生效
      */
-    private static final int MAX_SLIDE_DISTANCE_LINKAGE = 500;
+    private CardPanelSavedState mRestoredState;
+    /**
+     * 建立卡片栈时是否分帧绑定
+     */
+    private boolean mStagedBind = true;
+    private final BindScheduler mBindScheduler = new BindScheduler(mDeck);
+    /**
+     * 每一个子 View 对应的宽度
+     */
+    private int mChildWith = 0;
     /**
      * 卡片距离顶部的偏移量
      */
@@ -76,32 +81,70 @@ public class CardSlidePanel extends ViewGroup implements CardSlideView {
      * view叠加垂直偏移量的步长
      */
     private int mYOffset = 40;
-
-    private static final int X_VEL_THRESHOLD = 800;
-    private static final int X_DISTANCE_THRESHOLD = 300;
+    /**
+     * 松手后卡片去向的计算
+     */
+    private final ReleaseTrajectory mTrajectory = new ReleaseTrajectory();
+    /**
+     * 每一层的位置和缩放，以及拖动时下面卡片的联动
+     */
+    private final CardLinkage mLinkage;
 
     /**
      * 消失类型
      */
-    public static final int VANISH_TYPE_LEFT = 0;
-    public static final int VANISH_TYPE_RIGHT = 1;
+    public static final int VANISH_TYPE_LEFT = ReleaseTrajectory.FLY_LEFT;
+    public static final int VANISH_TYPE_RIGHT = ReleaseTrajectory.FLY_RIGHT;
+    /**
+     * 为加快vanish的速度，额外添加消失的距离
+     */
+    private static final int EXTRA_VANISH_DISTANCE = 100;
 
 
     /**
      * 回调接口
      */
     private CardSwitchListener mCardSwitchListener;
-    /**
-     * 当前正在显示的小项
-     */
-    private int isShowing = 0;
-    private boolean isBtnLocked = false;
     private GestureDetectorCompat mMoveDetector;
     private Point mClickDownPoint = new Point();
     private CardAdapter mAdapter;
-    private static final int MAX_VIEW_COUNT = 4;
+    /**
+     * 卡片层数（包含最底层备用的卡片），默认 4 层，最少 3 层
+     */
+    private static final int DEFAULT_VIEW_COUNT = 4;
+    private static final int MIN_VIEW_COUNT = 3;
+    private int mMaxViewCount = DEFAULT_VIEW_COUNT;
+    /**
+     * 卡片的取出、归还和数据绑定，复用池可通过 {@link #setCardViewPool(CardViewPool)} 在多个面板之间共享
+     */
+    private final CardBinder mBinder;
+    /**
+     * 为 true 时卡片的拖动、联动、回弹、飞出都通过 translation 和 scale 实现，
+     * 第一次 layout 之后卡片的 layout 位置不再变化，卡片内容触发的 layout 也不会让卡片跳回原位
+     */
+    private boolean mMoveByTranslation = false;
+    /**
+     * translation 模式下，每一层的位移和缩放只在卡片栈重建后应用一次
+     */
+    private boolean mLayerTransformDirty = true;
+    /**
+     * 硬件层、快照、绘制裁剪和滑动帧耗时统计
+     */
+    private final MotionEffects mEffects;
+    /**
+     * 热点路径的耗时统计，默认关闭
+     */
+    private final CardPanelStats mStats = new CardPanelStats();
+    /**
+     * 保留最近飞出的卡片用于 {@link #rewind()}，默认不保留
+     */
+    private static final int DEFAULT_REWIND_CACHE_SIZE = 0;
+    private final CardRewinder mRewinder;
+    /**
+     * 还没有开始飞出的滑动，来自按钮点击和 {@link #swipe(int, int)}
+     */
+    private final SwipeScheduler mSwipes = new SwipeScheduler(this, mDeck);
     private Rect mDraggableArea;
-    private WeakReference<Object> mSavedFirstItemData;
     private DragHelperCallback mDragHelperCallback;
 
     public CardSlidePanel(Context context) {
@@ -118,6 +161,16 @@ public class CardSlidePanel extends ViewGroup implements CardSlideView {
         mItemMarginTop = (int) array.getDimension(R.styleable.card_itemMarginTop, mItemMarginTop);
         mBottomMarginTop = (int) array.getDimension(R.styleable.card_bottomMarginTop, mBottomMarginTop);
         mYOffset = (int) array.getDimension(R.styleable.card_yOffsetStep, mYOffset);
+        mWidthHeightRate = Math.max(0, array.getFloat(R.styleable.card_widthHeightRate, mWidthHeightRate));
+        mMaxViewCount = Math.max(MIN_VIEW_COUNT, array.getInt(R.styleable.card_stackDepth, mMaxViewCount));
+        mBinder = new CardBinder(context, mStats);
+        mBinder.setAsyncInflate(array.getBoolean(R.styleable.card_asyncInflate, false));
+        mBinder.setPlaceholderResId(array.getResourceId(R.styleable.card_cardPlaceholder, 0));
+        mMoveByTranslation = array.getBoolean(R.styleable.card_moveByTranslation, mMoveByTranslation);
+        mEffects = new MotionEffects(array.getInt(R.styleable.card_snapshotDepth, 0));
+        mEffects.getLayerPolicy().setEnabled(array.getBoolean(R.styleable.card_hardwareLayers, false));
+        mLinkage = new CardLinkage(mCardStack, mStats);
+        mRewinder = new CardRewinder(this, mDeck, mBinder, array.getInt(R.styleable.card_rewindCacheSize, DEFAULT_REWIND_CACHE_SIZE));
         // 滑动相关类
         mDragHelperCallback = new DragHelperCallback(this);
         mDragHelper = ViewDragHelper.create(this, 10f, mDragHelperCallback);
@@ -126,157 +179,515 @@ public class CardSlidePanel extends ViewGroup implements CardSlideView {
 
         mMoveDetector = new GestureDetectorCompat(context, new MoveDetector(getContext()));
         mMoveDetector.setIsLongpressEnabled(false);
-        // TODO: 2019-08-08 为什么要在布局改变的时候重新绑定 adapter ？
-        getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
-            @Override
-            public void onGlobalLayout() {
-                if (getChildCount() != MAX_VIEW_COUNT) {
-                    bindAdapter();
-                }
-            }
-        });
     }
 
+    /**
+     * 重新建立卡片栈，卡片通过 addViewInLayout 添加，调用方负责 requestLayout；
+     * 还没有尺寸时推迟到 onMeasure 中
+     */
     private void bindAdapter() {
         if (mAdapter == null || mAllWidth <= 0 || mAllHeight <= 0) {
+            mBindPending = true;
             return;
         }
-        mViewList.clear();
-        for (int i = 0; i < MAX_VIEW_COUNT; i++) {
-            CardItemView itemView = new CardItemView(getContext());
-            itemView.bindLayoutResId(mAdapter.getLayoutId());
-            itemView.setParentView(this);
+        mBindPending = false;
+        recycleViews();
+        mDeck.reset(mMaxViewCount);
+        mLayerTransformDirty = true;
+        for (int i = 0; i < mMaxViewCount; i++) {
+            CardItemView itemView = acquireCardView(mDeck.getShowing() + mMaxViewCount - 1 - i);
             // 1. addView添加到ViewGroup中
-            addView(itemView, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT));
+            addViewInLayout(itemView, -1, new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.WRAP_CONTENT), true);
             if (i == 0) {
                 itemView.setAlpha(0);
             }
         }
 
-        for (int i = 0; i < MAX_VIEW_COUNT; i++) {
+        for (int i = 0; i < mMaxViewCount; i++) {
             // 2. viewList初始化,
-            mViewList.add((CardItemView) getChildAt(MAX_VIEW_COUNT - 1 - i));
-            // 3. 填充数据
-            if (i < mAdapter.getCount()) {
-                mAdapter.bindView(mViewList.get(i), i);
-                if (i == 0) {
-                    mSavedFirstItemData = new WeakReference<>(mAdapter.getItem(i));
-                }
-            } else {
-                mViewList.get(i).setVisibility(View.INVISIBLE);
+            mDeck.addCard((CardItemView) getChildAt(mMaxViewCount - 1 - i));
+        }
+        // 3. 填充数据，从当前显示的位置开始，重新 attach 的时候不会回到第一张
+        if (mRestoredState != null) {
+            mDeck.restore(mRestoredState.getShowing(), mRestoredState.getTopItemId());
+            mRestoredState = null;
+        }
+        // 只同步绑定顶层卡片，第一帧的耗时和卡片栈的层数无关，下面的卡片在之后的帧中绑定
+        mDeck.bindAll(mStagedBind ? 1 : Integer.MAX_VALUE);
+        mBindScheduler.schedule();
+        mEffects.updateSnapshotModes(mCardStack);
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        // 恢复之后还没有建立卡片栈时保存恢复的位置
+        return CardPanelSavedState.create(super.onSaveInstanceState(), mRestoredState, mAdapter,
+            mDeck.getShowing() + mCardStack.releasedCount());
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof CardPanelSavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        CardPanelSavedState savedState = (CardPanelSavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        mRestoredState = savedState;
+        if (!mCardStack.isEmpty()) {
+            // 卡片栈已经建立，按恢复的位置重新建立
+            bindAdapter();
+            requestLayout();
+        }
+    }
+
+    /**
+     * 给卡片绑定数据，卡片内容还在异步 inflate 时，等内容准备好再绑定。卡片的类型与数据不一致时，
+     * 换成复用池中对应类型的卡片，层级和位置不变，返回绑定了数据的卡片
+     */
+    CardItemView bindCardView(CardItemView itemView, int index) {
+        if (!mBinder.matchesType(mAdapter, itemView, index)) {
+            if (mDragHelper.getCapturedView() == itemView) {
+                mDragHelper.abort();
             }
+            CardItemView replacement = acquireCardView(index);
+            replacement.takeOverFrom(itemView);
+            addViewInLayout(replacement, indexOfChild(itemView), itemView.getLayoutParams(), true);
+            removeViewInLayout(itemView);
+            mBinder.release(itemView);
+            itemView = replacement;
         }
+        mBinder.bind(mAdapter, itemView, index);
+        return itemView;
+    }
+
+    CardItemView acquireCardView(int index) {
+        CardItemView itemView = mBinder.acquire(mAdapter, index);
+        itemView.setMoveByTranslation(mMoveByTranslation);
+        itemView.setFixedSize(mWidthHeightRate > 0);
+        itemView.setParentView(this);
+        return itemView;
     }
 
     /**
-     * 手势探测器
+     * 异步 inflate 完成，补上等待中的数据绑定
      */
-    static class MoveDetector extends SimpleOnGestureListener {
+    void onCardContentReady(CardItemView itemView) {
+        mBinder.onContentReady(mAdapter, itemView);
+    }
 
-        private final int mTouchSlop;
+    /**
+     * 提前 inflate 卡片放入复用池，可以在 {@link #setAdapter(CardAdapter)} 之前调用
+     *
+     * @param layoutId 卡片布局，与 {@link CardAdapter#getLayoutId(int)} 一致，多种类型时分别预热
+     * @param count    预先创建的卡片数量，一般等于卡片层数
+     */
+    public void prewarm(int layoutId, int count) {
+        mBinder.prewarm(layoutId, count);
+    }
+
+    /**
+     * 设置是否在后台线程 inflate 卡片布局，只对之后新创建的卡片生效
+     */
+    public void setAsyncInflateEnabled(boolean asyncInflate) {
+        mBinder.setAsyncInflate(asyncInflate);
+    }
 
-        public MoveDetector(Context context) {
-            mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+    /**
+     * 设置异步 inflate 时占位 View 的背景
+     */
+    public void setPlaceholderResId(int placeholderResId) {
+        mBinder.setPlaceholderResId(placeholderResId);
+    }
+
+    /**
+     * 把所有卡片归还到复用池
+     */
+    private void recycleViews() {
+        mDragHelper.abort();
+        mEffects.cancel(mCardStack);
+        mDeck.clear();
+        mDeckHost.cancelFrame();
+        mBindScheduler.cancel();
+        mSwipes.clear();
+        mRewinder.clear();
+        int childCount = getChildCount();
+        if (childCount == 0) {
+            return;
+        }
+        CardItemView[] children = new CardItemView[childCount];
+        for (int i = 0; i < childCount; i++) {
+            children[i] = (CardItemView) getChildAt(i);
         }
+        removeAllViewsInLayout();
+        for (CardItemView child : children) {
+            mBinder.release(child);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // 面板离开窗口（比如 ViewPager 销毁页面）时归还卡片，重新 attach 后在 onMeasure 中重新取出
+        recycleViews();
+        mBindPending = true;
+    }
 
-        @Override
-        public boolean onScroll(MotionEvent e1, MotionEvent e2, float dx, float dy) {
-            // 拖动了，touch不往下传递
-            return Math.abs(dy) + Math.abs(dx) > mTouchSlop;
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mBindPending) {
+            // measure 的缓存可能让 onMeasure 不再执行
+            requestLayout();
         }
     }
 
     /**
-     * 对 View 重新排序, 达到复用已经消失的 View 的效果
+     * 设置卡片复用池，多个面板共享同一个池可以避免重复 inflate
      */
-    private void orderViewStack() {
-        if (mReleasedViewList.size() == 0) {
+    public void setCardViewPool(CardViewPool pool) {
+        if (pool == null || pool == mBinder.getPool()) {
             return;
         }
+        recycleViews();
+        mBinder.setPool(pool);
+        bindAdapter();
+        requestLayout();
+    }
 
-        CardItemView changedView = (CardItemView) mReleasedViewList.get(0);
-        if (changedView.getLeft() == mInitCenterViewX) {
-            mReleasedViewList.remove(0);
+    public CardViewPool getCardViewPool() {
+        return mBinder.getPool();
+    }
+
+    /**
+     * 设置卡片层数（包含最底层备用的卡片），最少 {@value #MIN_VIEW_COUNT} 层
+     */
+    public void setStackDepth(int depth) {
+        depth = Math.max(MIN_VIEW_COUNT, depth);
+        if (depth == mMaxViewCount) {
             return;
         }
+        mMaxViewCount = depth;
+        bindAdapter();
+        requestLayout();
+    }
 
-        // 1. 消失的卡片View位置重置，由于大多手机会重新调用onLayout函数，所以此处大可以不做处理，不信你注释掉看看
-        changedView.offsetLeftAndRight(mInitCenterViewX - changedView.getLeft());
-        changedView.offsetTopAndBottom(mInitCenterViewY - changedView.getTop() + mYOffset * 2);
-        float scale = 1.0f - SCALE_STEP * 2;
-        changedView.setScaleX(scale);
-        changedView.setScaleY(scale);
-        changedView.setAlpha(0);
-
-        // 2. 卡片View在ViewGroup中的顺次调整
-        LayoutParams lp = changedView.getLayoutParams();
-        removeViewInLayout(changedView);
-        addViewInLayout(changedView, 0, lp, true);
+    public int getStackDepth() {
+        return mMaxViewCount;
+    }
 
-        // 3. changedView填充新数据
-        int newIndex = isShowing + 4;
-        if (newIndex < mAdapter.getCount()) {
-            mAdapter.bindView(changedView, newIndex);
-        } else {
-            changedView.setVisibility(View.INVISIBLE);
-        }
+    /**
+     * 建立卡片栈时是否只同步绑定顶层卡片，下面的卡片在之后的帧中按时间预算逐张绑定，默认开启
+     */
+    public void setStagedBindEnabled(boolean stagedBind) {
+        mStagedBind = stagedBind;
+    }
 
-        // 4. viewList中的卡片view的位次调整
-        mViewList.remove(changedView);
-        mViewList.add(changedView);
-        mReleasedViewList.remove(0);
+    /**
+     * 分帧绑定时每一帧用于绑定的时间预算，默认 4 毫秒，每一帧至少绑定一张卡片；高刷新率的屏幕可以调小
+     */
+    public void setStagedBindBudget(float millis) {
+        mBindScheduler.setFrameBudgetNanos((long) (millis * 1000000));
+    }
 
-        // 5. 更新showIndex、接口回调
-        if (isShowing + 1 < mAdapter.getCount()) {
-            isShowing++;
+    /**
+     * 设置是否通过 translation 移动卡片，切换后卡片回到各自的层
+     */
+    public void setMoveByTranslation(boolean moveByTranslation) {
+        if (mMoveByTranslation == moveByTranslation) {
+            return;
         }
-        if (null != mCardSwitchListener) {
-            mCardSwitchListener.onShow(isShowing);
+        mMoveByTranslation = moveByTranslation;
+        for (int i = 0; i < getChildCount(); i++) {
+            ((CardItemView) getChildAt(i)).setMoveByTranslation(moveByTranslation);
         }
+        mLayerTransformDirty = true;
+        requestLayout();
+    }
+
+    void dispatchShow(int index) {
+        if (mCardSwitchListener != null) {
+            mCardSwitchListener.onShow(index);
+        }
+    }
+
+    void dispatchVanish(int index, int type) {
+        if (mCardSwitchListener != null) {
+            mCardSwitchListener.onCardVanish(index, type);
+        }
+    }
+
+    public boolean isMoveByTranslation() {
+        return mMoveByTranslation;
     }
 
     /**
-     * 点击按钮消失动画
+     * 设置拖动、飞出时是否把卡片提升为硬件层，默认关闭
      */
-    public void vanishOnBtnClick(int type) {
-        View animateView = mViewList.get(0);
-        if (animateView.getVisibility() != View.VISIBLE || mReleasedViewList.contains(animateView)) {
+    public void setHardwareLayersEnabled(boolean enabled) {
+        mEffects.getLayerPolicy().setEnabled(enabled);
+    }
+
+    /**
+     * 设置拖动、飞出时的硬件层策略，新的策略需要自己调用 {@link LayerPolicy#setEnabled(boolean)} 开启
+     */
+    public void setLayerPolicy(LayerPolicy layerPolicy) {
+        mEffects.setLayerPolicy(layerPolicy, mCardStack);
+    }
+
+    public LayerPolicy getLayerPolicy() {
+        return mEffects.getLayerPolicy();
+    }
+
+    /**
+     * 绘制裁剪，需要先调用 {@link CardDrawCuller#setEnabled(boolean)} 开启
+     */
+    public CardDrawCuller getDrawCuller() {
+        return mEffects.getDrawCuller();
+    }
+
+    /**
+     * 热点路径（数据绑定、inflate、重新排序、layout、联动）的耗时统计，
+     * 需要先调用 {@link CardPanelStats#setEnabled(boolean)} 开启
+     */
+    public CardPanelStats getStats() {
+        return mStats;
+    }
+
+    /**
+     * 设置图片加载器，卡片大小确定后按卡片大小解码，卡片飞出回到底层时释放它上面的图片以便复用
+     */
+    public void setImageLoader(CardImageLoader imageLoader) {
+        mBinder.setImageLoader(imageLoader);
+    }
+
+    public CardImageLoader getImageLoader() {
+        return mBinder.getImageLoader();
+    }
+
+    /**
+     * 设置保留最近飞出的卡片数量，保留的卡片 {@link #rewind()} 时不需要重新绑定数据，
+     * 每一张都会占用一个卡片 View 和它上面的图片，每次飞出还要多一次卡片的替换，默认 0 不保留
+     */
+    public void setRewindCacheSize(int size) {
+        mRewinder.setCapacity(size);
+    }
+
+    public int getRewindCacheSize() {
+        return mRewinder.getCapacity();
+    }
+
+    /**
+     * 设置从第几层开始（顶层是第 0 层）的卡片画缓存的快照，快照在绑定数据后的第一次绘制时生成，
+     * 卡片上升到这一层之前时换回实时绘制。卡片布局复杂时可以减少联动时每一帧的绘制，
+     * 每一张画快照的卡片多占用一张卡片大小的位图，传 0 关闭
+     */
+    public void setSnapshotDepth(int depth) {
+        mEffects.setSnapshotDepth(depth, mCardStack);
+    }
+
+    public int getSnapshotDepth() {
+        return mEffects.getSnapshotDepth();
+    }
+
+    /**
+     * 设置滑动性能回调，每次手势结束后回调帧耗时、丢帧等数据，传 null 关闭统计
+     */
+    public void setSwipePerformanceListener(SwipePerformanceListener listener) {
+        mEffects.setSwipePerformanceListener(this, listener);
+    }
+
+    /**
+     * 前面的卡片是否已经可以拖动：有数据、已经绑定显示并且内容准备好了
+     */
+    boolean isFrontCapturable() {
+        CardItemView front = mDeck.getFront();
+        return front != null && mDeck.isVisible(front) && front.getVisibility() == View.VISIBLE
+            && front.isContentReady() && isDragIdle();
+    }
+
+    /**
+     * 飞出中的卡片直接到达终点，按飞出的顺序重新排序, 达到复用已经消失的 View 的效果
+     */
+    private void finishFlights() {
+        CardItemView releasedView = mCardStack.peekReleased();
+        if (releasedView == null) {
             return;
         }
+        // 每一张卡片的重新排序由 PanelDeckHost 统计
+        while (releasedView != null) {
+            releasedView.endFly();
+            if (mCardStack.peekReleased() == releasedView) {
+                // View 的动画已经结束，engine 还在等计时
+                mDeck.onFlyFinished(releasedView);
+            }
+            releasedView = mCardStack.peekReleased();
+        }
+    }
 
-        int finalX = 0;
-        // 为加快vanish的速度，额外添加消失的距离
-        int extraVanishDistance = 100;
-        if (type == VANISH_TYPE_LEFT) {
-            finalX = -mChildWith - extraVanishDistance;
-        } else if (type == VANISH_TYPE_RIGHT) {
-            finalX = mAllWidth + extraVanishDistance;
+    /**
+     * 飞出的卡片回到最底层，由 {@link DeckEngine} 在卡片栈轮转之后调用，数据由 engine 随后绑定
+     *
+     * @return 放在最底层的卡片，飞出的卡片被保留用于 {@link #rewind()} 时是复用池中的另一张卡片
+     */
+    CardItemView recycleCardToBottom(CardItemView changedView) {
+        boolean flying = changedView.isFlying();
+        changedView.cancelFly();
+        CardItemView bottomView = mRewinder.retain(changedView, mLinkage, mItemMarginTop);
+        if (bottomView != null) {
+            mEffects.onCardRemoved(changedView);
+        } else {
+            bottomView = changedView;
+            mBinder.releaseImages(changedView);
         }
+        // 1. 消失的卡片View位置重置，由于大多手机会重新调用onLayout函数，所以此处大可以不做处理，不信你注释掉看看
+        mLinkage.moveToLayer(bottomView, mMaxViewCount - 1);
+        bottomView.setAlpha(0);
 
-        if (finalX != 0) {
-            mReleasedViewList.add(animateView);
-            if (mDragHelper.smoothSlideViewTo(animateView, finalX, mInitCenterViewY + mAllHeight / 2)) {
-                ViewCompat.postInvalidateOnAnimation(this);
-                isBtnLocked = true;
+        // 2. 卡片View在ViewGroup中的顺次调整，代替保留的卡片时沿用它的 LayoutParams，不需要分配
+        LayoutParams lp = changedView.getLayoutParams();
+        removeViewInLayout(changedView);
+        addViewInLayout(bottomView, 0, lp, true);
+
+        // 3. 卡片栈中的位次已经调整过
+        if (mMoveByTranslation && isDragIdle()) {
+            // 没有 layout 兜底，联动结束后残留的位移在这里归位，还在飞出和回弹的卡片不动
+            for (int i = 0; i < mCardStack.size() - 1; i++) {
+                CardItemView itemView = mCardStack.get(i);
+                if (!itemView.isAnimating() && !mCardStack.isReleased(itemView)) {
+                    mLinkage.applyLayerTransform(itemView, i);
+                }
             }
         }
+        mEffects.updateSnapshotModes(mCardStack);
+        if (mEffects.isCulling()) {
+            invalidate();
+        }
+        if (flying) {
+            // 飞出动画被 engine 提前结束，不会再有动画结束的回调
+            onCardSettled(changedView);
+        }
+        return bottomView;
+    }
 
-        if (type >= 0 && mCardSwitchListener != null) {
-            mCardSwitchListener.onCardVanish(isShowing, type);
+    /**
+     * 上一张划走的卡片回到顶层，其余卡片随着它的移动各下移一层，回调 {@link CardSwitchListener#onShow(int)}。
+     * 保留着的卡片（见 {@link #setRewindCacheSize(int)}）从飞出的位置回来，数据没有变化时不需要重新绑定；
+     * 没有保留的卡片时最底层备用的卡片重新绑定后从左侧回来
+     *
+     * @return 正在拖动、还有卡片在回弹或者已经是第一张时返回 false
+     */
+    public boolean rewind() {
+        if (mAdapter == null || mCardStack.isEmpty() || mDeck.getShowing() == 0 || !isDragIdle()) {
+            return false;
         }
+        mSwipes.clear();
+        finishFlights();
+        CardItemView card = mRewinder.rewind(-mChildWith - EXTRA_VANISH_DISTANCE, mInitCenterViewY);
+        if (card == null) {
+            return false;
+        }
+        mEffects.updateSnapshotModes(mCardStack);
+        // 回来的过程中通过联动把下面的卡片推回各自的层
+        mEffects.onMoveStarted(mCardStack);
+        card.animTo(mInitCenterViewX, mInitCenterViewY);
+        return true;
     }
 
-    @Override
-    public void computeScroll() {
-        if (mDragHelper.continueSettling(true)) {
-            ViewCompat.postInvalidateOnAnimation(this);
-        } else {
-            // 动画结束
-            if (mDragHelper.getViewDragState() == ViewDragHelper.STATE_IDLE) {
-                orderViewStack();
-                isBtnLocked = false;
-            }
+    /**
+     * 点击按钮消失动画，上一张还在飞出时排队，不会丢弃
+     */
+    public void vanishOnBtnClick(int type) {
+        if (type == VANISH_TYPE_LEFT || type == VANISH_TYPE_RIGHT) {
+            swipe(1, type);
+        } else if (type >= 0 && mDeck.canRelease()) {
+            dispatchVanish(mDeck.getShowing() + mCardStack.releasedCount(), type);
+        }
+    }
+
+    /**
+     * 连续划走 count 张卡片。有卡片正在飞出或者拖动时排队，排队越多飞出动画越短；
+     * 排队的数量不少于卡片层数时，除了最后一张都直接跳过，只回调 {@link CardSwitchListener#onCardVanish(int, int)}，
+     * 卡片栈只重新绑定一次。按下屏幕或者 {@link #rewind()} 会清空排队
+     *
+     * @param type {@link #VANISH_TYPE_LEFT} 或 {@link #VANISH_TYPE_RIGHT}
+     */
+    public void swipe(int count, int type) {
+        if (mAdapter == null || (type != VANISH_TYPE_LEFT && type != VANISH_TYPE_RIGHT)) {
+            return;
         }
+        mSwipes.swipe(count, type);
+    }
+
+    void drainSwipeQueue() {
+        mSwipes.drain();
+    }
+
+    boolean isDragIdle() {
+        return mDragHelper.getViewDragState() == ViewDragHelper.STATE_IDLE;
+    }
+
+    /**
+     * 排在最前面的滑动开始飞出，由 {@link SwipeScheduler} 调用
+     */
+    void flyOut(int type) {
+        bindLinkedLayers();
+        CardItemView animateView = mDeck.getFront();
+        int index = mDeck.getShowing() + mCardStack.layerOf(animateView);
+        int finalX = type == VANISH_TYPE_LEFT ? -mChildWith - EXTRA_VANISH_DISTANCE : mAllWidth + EXTRA_VANISH_DISTANCE;
+        int duration = mSwipes.compress(ReleaseTrajectory.flyDuration(finalX - animateView.getScreenX()));
+        mDeck.release(animateView, duration);
+        mEffects.onButtonFly(mCardStack);
+        animateView.flyTo(finalX, mInitCenterViewY + mAllHeight / 2, duration);
+        mDeck.lockButtons();
+        dispatchVanish(index, type);
+    }
+
+    /**
+     * engine 完成一次飞出的重新排序之后回调，接着开始排队的下一次滑动
+     */
+    void onDeckFlyFinished(CardItemView itemView) {
+        drainSwipeQueue();
+        onCardSettled(itemView);
+    }
+
+    /**
+     * 飞出动画结束，由 {@link CardAnimationClock} 驱动。engine 按同一个时钟计时，
+     * 两边谁先到都只会重新排序一次
+     */
+    void onCardFlyFinished(CardItemView itemView) {
+        mDeck.onFlyFinished(itemView);
+    }
+
+    /**
+     * 卡片的回弹或者飞出动画结束，所有卡片都停下来后还原硬件层
+     */
+    void onCardSettled(CardItemView itemView) {
+        if (mDragHelper.getViewDragState() != ViewDragHelper.STATE_DRAGGING) {
+            onStackSettled();
+        }
+    }
+
+    /**
+     * 拖动和飞出时联动会移动下面所有的卡片，最底层的卡片也会渐显，等待绑定的卡片都要马上绑定
+     */
+    private void bindLinkedLayers() {
+        mBindScheduler.bindNow(mCardStack.releasedCount() + mCardStack.size() - 1);
+    }
+
+    private void onStackSettled() {
+        mEffects.onSettled(mCardStack);
+    }
+
+    /**
+     * 不触发 requestLayout 地添加和移除卡片，卡片的 layout 由调用方负责
+     */
+    void attachCard(CardItemView card, int index) {
+        addViewInLayout(card, index, card.getLayoutParams(), true);
+    }
+
+    void detachCard(CardItemView card) {
+        removeViewInLayout(card);
     }
 
     @Override
@@ -299,11 +710,8 @@ public class CardSlidePanel extends ViewGroup implements CardSlideView {
         boolean moveFlag = mMoveDetector.onTouchEvent(ev);
         int action = ev.getActionMasked();
         if (action == MotionEvent.ACTION_DOWN) {
-            // ACTION_DOWN的时候就对view重新排序
-            if (mDragHelper.getViewDragState() == ViewDragHelper.STATE_SETTLING) {
-                mDragHelper.abort();
-            }
-            orderViewStack();
+            // 手指接管，排队的滑动不再继续。正在飞出的卡片继续飞，下一张卡片可以直接拖动
+            mSwipes.clear();
 
             // 保存初次按下时arrowFlagView的Y坐标
             // action_down时就让mDragHelper开始工作，否则有时候导致异常
@@ -327,7 +735,6 @@ public class CardSlidePanel extends ViewGroup implements CardSlideView {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        measureChildren(widthMeasureSpec, heightMeasureSpec);
         int maxWidth = MeasureSpec.getSize(widthMeasureSpec);
         int maxHeight = MeasureSpec.getSize(heightMeasureSpec);
         setMeasuredDimension(
@@ -336,160 +743,103 @@ public class CardSlidePanel extends ViewGroup implements CardSlideView {
 
         mAllWidth = getMeasuredWidth();
         mAllHeight = getMeasuredHeight();
+        if (mBindPending) {
+            // 第一次拿到尺寸，卡片在这一次 measure 中一起测量
+            bindAdapter();
+        }
+        if (mWidthHeightRate <= 0) {
+            measureChildren(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        mLinkage.measureCards(mAllWidth - getPaddingLeft() - getPaddingRight(), mWidthHeightRate);
     }
 
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        long start = mStats.begin(CardPanelStats.OP_LAYOUT);
         int childCount = getChildCount();
+        // translation 模式下 layout 位置所有卡片都一样，每一层的位移和缩放只需要应用一次，
+        // 之后的 layout 不会打断正在进行的拖动和动画
+        boolean applyLayerTransform = !mMoveByTranslation || mLayerTransformDirty;
         for (int i = 0; i < childCount; i++) {
-            View viewItem = mViewList.get(i);
+            CardItemView viewItem = mCardStack.get(i);
             // 1. 先layout出来
-            int childHeight = viewItem.getMeasuredHeight();
-            int viewLeft = (getWidth() - viewItem.getMeasuredWidth()) / 2;
-            viewItem.layout(viewLeft, mItemMarginTop, viewLeft + viewItem.getMeasuredWidth(), mItemMarginTop + childHeight);
-
-            // 2. 调整位置
-            int offset = mYOffset * i;
-            float scale = 1 - SCALE_STEP * i;
-            if (i > 2) {
-                // 备用的view
-                offset = mYOffset * 2;
-                scale = 1 - SCALE_STEP * 2;
+            mLinkage.layoutCard(viewItem, getWidth(), mItemMarginTop);
+            if (applyLayerTransform) {
+                // 2. 调整位置、缩放
+                mLinkage.applyLayerTransform(viewItem, i);
             }
-            viewItem.offsetTopAndBottom(offset);
-
-            // 3. 调整缩放、重心等
-            viewItem.setPivotY(viewItem.getMeasuredHeight());
-            viewItem.setPivotX(viewItem.getMeasuredWidth() / 2);
-            viewItem.setScaleX(scale);
-            viewItem.setScaleY(scale);
         }
 
         if (childCount > 0) {
+            mLayerTransformDirty = false;
             // 初始化一些中间参数
-            mInitCenterViewX = mViewList.get(0).getLeft();
-            mInitCenterViewY = mViewList.get(0).getTop();
-            mChildWith = mViewList.get(0).getMeasuredWidth();
+            CardItemView topView = mCardStack.top();
+            mInitCenterViewX = topView.getLeft();
+            mInitCenterViewY = topView.getTop();
+            mChildWith = topView.getMeasuredWidth();
+            mLinkage.setGeometry(mInitCenterViewX, mInitCenterViewY, mYOffset);
+            mBinder.setCardSize(mChildWith, topView.getMeasuredHeight());
         }
-    }
-
-    public void setAdapter(final CardAdapter adapter) {
-        this.mAdapter = adapter;
-        bindAdapter();
-        adapter.registerDataSetObserver(new DataSetObserver() {
-            @Override
-            public void onChanged() {
-                orderViewStack();
-
-                boolean reset = false;
-                if (adapter.getCount() > 0) {
-                    Object firstObj = adapter.getItem(0);
-                    if (null == mSavedFirstItemData) {
-                        // 此前就没有数据，需要保存第一条数据
-                        mSavedFirstItemData = new WeakReference<>(firstObj);
-                        isShowing = 0;
-                    } else {
-                        Object savedObj = mSavedFirstItemData.get();
-                        if (firstObj != savedObj) {
-                            // 如果第一条数据不等的话，需要重置
-                            isShowing = 0;
-                            reset = true;
-                            mSavedFirstItemData = new WeakReference<>(firstObj);
-                        }
-                    }
-                }
-
-                int delay = 0;
-                for (int i = 0; i < MAX_VIEW_COUNT; i++) {
-                    CardItemView itemView = mViewList.get(i);
-                    if (isShowing + i < adapter.getCount()) {
-                        adapter.bindView(itemView, isShowing + i);
-                        if (itemView.getVisibility() == View.VISIBLE) {
-                            if (!reset) {
-                                continue;
-                            }
-                        } else if (i == 0) {
-                            if (isShowing > 0) {
-                                isShowing++;
-                            }
-                            mCardSwitchListener.onShow(isShowing);
-                        }
-                        if (i == MAX_VIEW_COUNT - 1) {
-                            itemView.setAlpha(0);
-                            itemView.setVisibility(View.VISIBLE);
-                        } else {
-                            itemView.setVisibilityWithAnimation(View.VISIBLE, delay++);
-                        }
-                    } else {
-                        itemView.setVisibility(View.INVISIBLE);
-                    }
-                }
-            }
-        });
+        if (mEffects.isCulling()) {
+            invalidate();
+        }
+        mStats.end(CardPanelStats.OP_LAYOUT, start);
     }
 
     @Override
-    public void onViewPosChanged(View changedView) {
-        // 调用 offsetLeftAndRight 导致 viewPosition 改变，会调到此处，所以此处对index做保护处理
-        int index = mViewList.indexOf(changedView);
-        if (index + 2 >= mViewList.size()) {
-            // 已经快没有数据了
+    protected void dispatchDraw(Canvas canvas) {
+        if (!mEffects.isCulling()) {
+            super.dispatchDraw(canvas);
             return;
         }
-
-        processLinkageView(changedView);
+        CardDrawCuller culler = mEffects.getDrawCuller();
+        culler.beginFrame(this);
+        super.dispatchDraw(canvas);
+        culler.drawOverlay(canvas);
     }
 
-    /**
-     * 顶层卡片View位置改变，底层的位置需要调整
-     *
-     * @param changedView 顶层的卡片view
-     */
-    private void processLinkageView(View changedView) {
-        int changeViewLeft = changedView.getLeft();
-        int changeViewTop = changedView.getTop();
-        int distance = Math.abs(changeViewTop - mInitCenterViewY)
-            + Math.abs(changeViewLeft - mInitCenterViewX);
-        float rate = distance / (float) MAX_SLIDE_DISTANCE_LINKAGE;
-
-        float rate1 = rate;
-        float rate2 = rate - 0.1f;
-
-        if (rate > 1) {
-            rate1 = 1;
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if (!mEffects.isCulling()) {
+            return super.drawChild(canvas, child, drawingTime);
         }
-
-        if (rate2 < 0) {
-            rate2 = 0;
-        } else if (rate2 > 1) {
-            rate2 = 1;
+        CardDrawCuller culler = mEffects.getDrawCuller();
+        int layer = mCardStack.layerOf(child);
+        int result = culler.cull(child, layer > 0 ? mCardStack.get(layer - 1) : null);
+        if (result != CardDrawCuller.CLIP) {
+            return result == CardDrawCuller.DRAW && super.drawChild(canvas, child, drawingTime);
         }
-
-        adjustLinkageViewItem(changedView, rate1, 1);
-        adjustLinkageViewItem(changedView, rate2, 2);
-
-        CardItemView bottomCardView = mViewList.get(mViewList.size() - 1);
-        bottomCardView.setAlpha(rate2);
+        int saveCount = canvas.save();
+        canvas.clipRect(culler.getClipRect());
+        boolean more = super.drawChild(canvas, child, drawingTime);
+        canvas.restoreToCount(saveCount);
+        return more;
     }
 
-    /**
-     * 由 index 对应 view 变成 index - 1 对应的 view
-     */
-    private void adjustLinkageViewItem(View changedView, float rate, int index) {
-        int changeIndex = mViewList.indexOf(changedView);
-        int initPosY = mYOffset * index;
-        float initScale = 1 - SCALE_STEP * index;
-
-        int nextPosY = mYOffset * (index - 1);
-        float nextScale = 1 - SCALE_STEP * (index - 1);
+    public void setAdapter(CardAdapter adapter) {
+        if (mAdapter != null) {
+            mAdapter.unregisterDataSetObserver(mDeckHost);
+        }
+        this.mAdapter = adapter;
+        bindAdapter();
+        requestLayout();
+        adapter.registerDataSetObserver(mDeckHost);
+    }
 
-        int offset = (int) (initPosY + (nextPosY - initPosY) * rate);
-        float scale = initScale + (nextScale - initScale) * rate;
+    @Override
+    public void onViewPosChanged(View changedView) {
+        if (mEffects.isCulling()) {
+            // 硬件加速时子 View 移动不会重新记录面板的绘制，遮挡关系需要每一帧重新计算
+            invalidate();
+        }
+        mLinkage.onCardMoved((CardItemView) changedView, mDragHelper.getCapturedView());
+    }
 
-        View adjustView = mViewList.get(changeIndex + index);
-        adjustView.offsetTopAndBottom(offset - adjustView.getTop() + mInitCenterViewY);
-        adjustView.setScaleX(scale);
-        adjustView.setScaleY(scale);
+    @Override
+    public void onViewCaptured(View capturedChild) {
+        bindLinkedLayers();
+        mEffects.onGestureStart(mCardStack);
     }
 
     @Override
@@ -498,76 +848,55 @@ public class CardSlidePanel extends ViewGroup implements CardSlideView {
     }
 
     @Override
-    public void onViewReleased(View releasedChild, float xvel, float yvel) {
-        // 松手时处理滑动到边缘的动画
-        int finalX = mInitCenterViewX;
-        int finalY = mInitCenterViewY;
-        int flyType = -1;
-
-        // 1. 下面这一坨计算finalX和finalY，要读懂代码需要建立一个比较清晰的数学模型才能理解，不信拉倒
-        int dx = releasedChild.getLeft() - mInitCenterViewX;
-        int dy = releasedChild.getTop() - mInitCenterViewY;
-
-        // yvel < xvel * xyRate则允许以速度计算偏移
-        final float xyRate = 3f;
-        if (xvel > X_VEL_THRESHOLD && Math.abs(yvel) < xvel * xyRate) {
-            // x正方向的速度足够大，向右滑动消失
-            finalX = mAllWidth;
-            finalY = (int) (yvel * (mChildWith + releasedChild.getLeft()) / xvel + releasedChild.getTop());
-            flyType = VANISH_TYPE_RIGHT;
-        } else if (xvel < -X_VEL_THRESHOLD && Math.abs(yvel) < -xvel * xyRate) {
-            // x负方向的速度足够大，向左滑动消失
-            finalX = -mChildWith;
-            finalY = (int) (yvel * (mChildWith + releasedChild.getLeft()) / (-xvel) + releasedChild.getTop());
-            flyType = VANISH_TYPE_LEFT;
-        } else if (dx > X_DISTANCE_THRESHOLD && Math.abs(dy) < dx * xyRate) {
-            // x正方向的位移足够大，向右滑动消失
-            finalX = mAllWidth;
-            finalY = dy * (mChildWith + mInitCenterViewX) / dx + mInitCenterViewY;
-            flyType = VANISH_TYPE_RIGHT;
-        } else if (dx < -X_DISTANCE_THRESHOLD && Math.abs(dy) < -dx * xyRate) {
-            // x负方向的位移足够大，向左滑动消失
-            finalX = -mChildWith;
-            finalY = dy * (mChildWith + mInitCenterViewX) / (-dx) + mInitCenterViewY;
-            flyType = VANISH_TYPE_LEFT;
-        }
-        // 如果斜率太高，就折中处理
-        if (finalY > mAllHeight) {
-            finalY = mAllHeight;
-        } else if (finalY < -mAllHeight / 2) {
-            finalY = -mAllHeight / 2;
-        }
-
+    public void onViewReleased(View releasedView, float xvel, float yvel) {
+        CardItemView releasedChild = (CardItemView) releasedView;
+        // 1. 松手时计算卡片的去向
+        int releasedLeft = releasedChild.getScreenX();
+        mTrajectory.setGeometry(mInitCenterViewX, mInitCenterViewY, mAllWidth, mAllHeight, mChildWith);
+        int flyType = mTrajectory.compute(releasedLeft, releasedChild.getScreenY(), xvel, yvel);
+        int finalX = mTrajectory.getFinalX();
+        int finalY = mTrajectory.getFinalY();
+
+        mEffects.onRelease(flyType != ReleaseTrajectory.FLY_NONE);
         // 如果没有飞向两侧，而是回到了中间，需要谨慎处理
-        if (finalX == mInitCenterViewX) {
-            ((CardItemView) releasedChild).animTo(mInitCenterViewX, mInitCenterViewY);
+        if (flyType == ReleaseTrajectory.FLY_NONE) {
+            releasedChild.animTo(mInitCenterViewX, mInitCenterViewY);
+            if (!releasedChild.isAnimating()) {
+                // 没有拖动过，不会有回弹动画，此时拖动状态还没有恢复为 IDLE
+                onStackSettled();
+            }
+            mSwipes.postDrain();
         } else {
             // 2. 向两边消失的动画
-            mReleasedViewList.add(releasedChild);
-            if (mDragHelper.smoothSlideViewTo(releasedChild, finalX, finalY)) {
-                ViewCompat.postInvalidateOnAnimation(this);
-            }
+            int duration = ReleaseTrajectory.flyDuration(finalX - releasedLeft);
+            int index = mDeck.getShowing() + mCardStack.layerOf(releasedChild);
+            mDeck.release(releasedChild, duration);
+            releasedChild.flyTo(finalX, finalY, duration);
             // 3. 消失动画即将进行，listener回调
-            if (flyType >= 0 && mCardSwitchListener != null) {
-                mCardSwitchListener.onCardVanish(isShowing, flyType);
-            }
+            dispatchVanish(index, flyType);
         }
     }
 
     @Override
     public boolean isBtnLocked() {
-        return isBtnLocked;
+        return mDeck.isBtnLocked();
     }
 
     @Override
     public int getViewIndex(View view) {
-        if (mViewList != null && mViewList.size() > 0) {
-            return mViewList.indexOf(view);
+        if (!mCardStack.isEmpty()) {
+            // 相对于飞出中的卡片之后的第一张，飞出中的卡片是负数
+            return mCardStack.layerOf(view) - mCardStack.releasedCount();
         } else {
             return 0;
         }
     }
 
+    @Override
+    public int getFlyingCount() {
+        return mCardStack.releasedCount();
+    }
+
     @Override
     public Rect getDraggableArea() {
         return mDraggableArea;
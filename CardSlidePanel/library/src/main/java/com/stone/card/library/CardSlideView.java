@@ -17,6 +17,11 @@ public interface CardSlideView {
      */
     void onViewPosChanged(View changedView);
 
+    /**
+     * 开始拖动某个 View
+     */
+    void onViewCaptured(View capturedChild);
+
     /**
      * 获取 Adapter
      */
@@ -38,10 +43,17 @@ public interface CardSlideView {
     boolean isBtnLocked();
 
     /**
-     * 获取 View 的索引
+     * 获取 View 的索引，以飞出中的卡片之后的第一张为 0，飞出中的卡片是负数
      */
     int getViewIndex(View view);
 
+    /**
+     * 正在飞出的卡片数量
+     */
+    int getFlyingCount();
+
+    int getChildCount();
+
     /**
      * 获取拖动区域
      */
@@ -0,0 +1,89 @@
+package com.stone.card.library;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+import java.util.ArrayList;
+
+/**
+ * 卡片内容的缓存位图，底层卡片直接画这张位图，不再遍历卡片的 View 树
+ * <p>
+ * 离开快照模式的卡片把位图还给共享的池，下一张进入快照模式的卡片直接复用，只在主线程访问
+ *
+ * @author im_dsd
+ */
+final class CardSnapshot {
+    private static final int MAX_POOL_SIZE = 2;
+    private static final ArrayList<Bitmap> sPool = new ArrayList<>(MAX_POOL_SIZE);
+
+    private final Canvas mCanvas = new Canvas();
+    private Bitmap mBitmap;
+    private boolean mValid = false;
+
+    /**
+     * 快照是否还能代表卡片当前的内容
+     */
+    boolean isValid(int width, int height) {
+        return mValid && mBitmap != null && mBitmap.getWidth() == width && mBitmap.getHeight() == height;
+    }
+
+    void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * 开始把卡片内容画到快照上
+     */
+    Canvas beginCapture(int width, int height) {
+        if (mBitmap == null || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            release();
+            mBitmap = obtain(width, height);
+            mCanvas.setBitmap(mBitmap);
+        } else {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        return mCanvas;
+    }
+
+    void endCapture() {
+        mValid = true;
+    }
+
+    void draw(Canvas canvas) {
+        canvas.drawBitmap(mBitmap, 0, 0, null);
+    }
+
+    /**
+     * 位图还给共享的池
+     */
+    void release() {
+        mValid = false;
+        if (mBitmap == null) {
+            return;
+        }
+        mCanvas.setBitmap(null);
+        if (sPool.size() < MAX_POOL_SIZE) {
+            sPool.add(mBitmap);
+        } else {
+            mBitmap.recycle();
+        }
+        mBitmap = null;
+    }
+
+    private static Bitmap obtain(int width, int height) {
+        for (int i = sPool.size() - 1; i >= 0; i--) {
+            Bitmap bitmap = sPool.get(i);
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                sPool.remove(i);
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            }
+        }
+        if (!sPool.isEmpty()) {
+            // 尺寸变了，旧的位图不会再用到
+            sPool.remove(0).recycle();
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+}
@@ -0,0 +1,152 @@
+package com.stone.card.library;
+
+import android.content.Context;
+import android.support.v4.view.AsyncLayoutInflater;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+
+/**
+ * 卡片 View 复用池
+ * <p>
+ * 可以在多个 {@link CardSlidePanel} 之间共享（例如 ViewPager 中的多个卡片面板），
+ * 面板创建时从池中取出卡片，面板销毁时把卡片归还，避免每次都重新 inflate 布局。
+ * 池中的 View 与创建它的 Context 绑定，所以只能在同一个 Activity 内共享。
+ *
+ * @author im_dsd
+ */
+public class CardViewPool {
+    /**
+     * 每种布局默认最多缓存的卡片数量
+     */
+    private static final int DEFAULT_MAX_SCRAP = 8;
+    /**
+     * 按 layout id 分类存放的空闲卡片
+     */
+    private final SparseArray<ArrayList<CardItemView>> mScrapHeap = new SparseArray<>();
+    private int mMaxScrap = DEFAULT_MAX_SCRAP;
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+    private AsyncLayoutInflater mAsyncInflater;
+    private Context mAsyncInflaterContext;
+
+    /**
+     * 取出一个已经填充了 layoutId 布局的卡片，池中没有时才会 inflate
+     */
+    public CardItemView acquire(Context context, int layoutId) {
+        return acquire(context, layoutId, false);
+    }
+
+    /**
+     * 取出一个卡片，池中没有时才会 inflate
+     *
+     * @param async 为 true 时在后台线程 inflate，返回的卡片先显示占位 View，
+     *              可以通过 {@link CardItemView#isContentReady()} 判断内容是否已经准备好
+     */
+    public CardItemView acquire(Context context, int layoutId, boolean async) {
+        ArrayList<CardItemView> scrap = mScrapHeap.get(layoutId);
+        if (scrap != null && !scrap.isEmpty()) {
+            mHitCount++;
+            return scrap.remove(scrap.size() - 1);
+        }
+
+        mMissCount++;
+        return createItemView(context, layoutId, async);
+    }
+
+    /**
+     * 提前创建卡片放入池中，可以在 setAdapter 之前调用，把 inflate 的耗时提前
+     *
+     * @param count 池中该布局期望的卡片数量，不会超过 {@link #setMaxScrap(int)}
+     */
+    public void prewarm(Context context, int layoutId, int count, boolean async) {
+        ArrayList<CardItemView> scrap = mScrapHeap.get(layoutId);
+        if (scrap == null) {
+            scrap = new ArrayList<>(mMaxScrap);
+            mScrapHeap.put(layoutId, scrap);
+        }
+        int target = Math.min(count, mMaxScrap);
+        while (scrap.size() < target) {
+            scrap.add(createItemView(context, layoutId, async));
+        }
+    }
+
+    private CardItemView createItemView(Context context, int layoutId, boolean async) {
+        CardItemView itemView = new CardItemView(context);
+        if (async) {
+            itemView.bindLayoutResIdAsync(getAsyncInflater(context), layoutId);
+        } else {
+            itemView.bindLayoutResId(layoutId);
+        }
+        return itemView;
+    }
+
+    private AsyncLayoutInflater getAsyncInflater(Context context) {
+        if (mAsyncInflater == null || mAsyncInflaterContext != context) {
+            mAsyncInflater = new AsyncLayoutInflater(context);
+            mAsyncInflaterContext = context;
+        }
+        return mAsyncInflater;
+    }
+
+    /**
+     * 归还卡片，调用前卡片必须已经从父容器中移除
+     */
+    public void release(CardItemView itemView) {
+        if (itemView.getParent() != null) {
+            throw new IllegalStateException("CardItemView must be removed from its parent before release");
+        }
+        int layoutId = itemView.getLayoutResId();
+        ArrayList<CardItemView> scrap = mScrapHeap.get(layoutId);
+        if (scrap == null) {
+            scrap = new ArrayList<>(mMaxScrap);
+            mScrapHeap.put(layoutId, scrap);
+        }
+        if (scrap.size() >= mMaxScrap || scrap.contains(itemView)) {
+            return;
+        }
+        itemView.resetForRecycle();
+        scrap.add(itemView);
+    }
+
+    /**
+     * 设置每种布局最多缓存的卡片数量
+     */
+    public void setMaxScrap(int maxScrap) {
+        mMaxScrap = maxScrap;
+        for (int i = 0; i < mScrapHeap.size(); i++) {
+            ArrayList<CardItemView> scrap = mScrapHeap.valueAt(i);
+            while (scrap.size() > maxScrap) {
+                scrap.remove(scrap.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * 池中某种布局的空闲卡片数量
+     */
+    public int getScrapCount(int layoutId) {
+        ArrayList<CardItemView> scrap = mScrapHeap.get(layoutId);
+        return scrap == null ? 0 : scrap.size();
+    }
+
+    /**
+     * 从池中直接取到卡片的次数
+     */
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * 池中没有可用卡片、需要重新 inflate 的次数
+     */
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public void clear() {
+        mScrapHeap.clear();
+        mAsyncInflater = null;
+        mAsyncInflaterContext = null;
+    }
+}
@@ -10,10 +10,6 @@ import android.view.View;
  * Created by im_dsd on 2019-08-08
  */
 public class DragHelperCallback extends ViewDragHelper.Callback {
-    /**
-     * view叠加缩放的步长
-     */
-    private static final float SCALE_STEP = 0.08f;
     private final CardSlideView mView;
 
     public DragHelperCallback(CardSlideView view) {
@@ -22,11 +18,20 @@ public class DragHelperCallback extends ViewDragHelper.Callback {
 
     @Override
     public void onViewPositionChanged(View changedView, int left, int top, int dx, int dy) {
+        // translation 模式下卡片的 layout 位置保持不变
+        ((CardItemView) changedView).commitDragOffset(dx, dy);
         if (mView != null) {
             mView.onViewPosChanged(changedView);
         }
     }
 
+    @Override
+    public void onViewCaptured(View capturedChild, int activePointerId) {
+        if (mView != null) {
+            mView.onViewCaptured(capturedChild);
+        }
+    }
+
     @Override
     public boolean tryCaptureView(View child, int pointerId) {
         if (mView == null) {
@@ -34,16 +39,15 @@ public class DragHelperCallback extends ViewDragHelper.Callback {
         }
         // 如果数据List为空，或者子View不可见，则不予处理
         if (mView.getAdapter() == null || mView.getAdapter().getCount() == 0
-            || child.getVisibility() != View.VISIBLE || child.getScaleX() <= 1.0f - SCALE_STEP) {
-            // 一般来讲，如果拖动的是第三层、或者第四层的View，则直接禁止
-            // 此处用getScale的用法来巧妙回避
+            || child.getVisibility() != View.VISIBLE) {
             return false;
         }
-        if (mView.isBtnLocked()) {
+        // 异步 inflate 还没有完成的卡片不允许拖动
+        if (!((CardItemView) child).isContentReady()) {
             return false;
         }
-        // 1. 只有顶部的View才允许滑动
-        if (mView.getViewIndex(child) > 0) {
+        // 1. 只有飞出中的卡片之后的第一张才允许滑动，上一张还在飞出时也可以
+        if (mView.getViewIndex(child) != 0) {
             return false;
         }
         // 2. 获取可滑动区域
@@ -64,6 +68,16 @@ public class DragHelperCallback extends ViewDragHelper.Callback {
         return shouldCapture;
     }
 
+    @Override
+    public int getOrderedChildIndex(int index) {
+        // 飞出中的卡片在最上面，放到最后查找，手指落在它们上面时也能拖动下一张卡片
+        int flyingCount = mView == null ? 0 : mView.getFlyingCount();
+        if (flyingCount == 0) {
+            return index;
+        }
+        return index >= flyingCount ? index - flyingCount : index + mView.getChildCount() - flyingCount;
+    }
+
     @Override
     public int getViewHorizontalDragRange(View child) {
         // 这个用来控制拖拽过程中松手后，自动滑行的速度
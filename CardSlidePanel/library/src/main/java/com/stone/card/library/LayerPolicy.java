@@ -0,0 +1,119 @@
+package com.stone.card.library;
+
+import android.view.View;
+
+import com.stone.card.core.CardStack;
+
+/**
+ * 卡片硬件层策略
+ * <p>
+ * 拖动、回弹、飞出的过程中，顶层卡片（可选：下面联动的卡片）提升为硬件层，
+ * 每一帧只需要合成而不用重新绘制整棵子 View 树，底层卡片渐显时的 alpha 也不再需要离屏缓冲。
+ * 所有卡片的动画都停止后恢复为普通 View。只会还原由策略自己提升的卡片。
+ * 每一张硬件层都会占用显存，卡片内容变化时还要重新渲染，所以默认关闭，
+ * 通过 {@link CardSlidePanel#setHardwareLayersEnabled(boolean)} 或者 {@link #setEnabled(boolean)} 开启。
+ *
+ * @author im_dsd
+ */
+public class LayerPolicy {
+    private boolean mEnabled = false;
+    private boolean mPromoteLinkage = false;
+    private int mPromotionCount = 0;
+    private int mDemotionCount = 0;
+
+    /**
+     * 是否启用，默认关闭；关闭时会在下一次动画停止后还原已经提升的卡片
+     */
+    public void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    /**
+     * 除了顶层卡片，是否也提升下面联动的卡片
+     */
+    public void setPromoteLinkage(boolean promoteLinkage) {
+        mPromoteLinkage = promoteLinkage;
+    }
+
+    public boolean isPromoteLinkage() {
+        return mPromoteLinkage;
+    }
+
+    /**
+     * 提升为硬件层的累计次数
+     */
+    public int getPromotionCount() {
+        return mPromotionCount;
+    }
+
+    /**
+     * 还原为普通 View 的累计次数
+     */
+    public int getDemotionCount() {
+        return mDemotionCount;
+    }
+
+    /**
+     * 卡片开始拖动或者飞出
+     */
+    void onMoveStarted(CardStack<CardItemView> stack) {
+        if (!mEnabled || stack.isEmpty()) {
+            return;
+        }
+        // 飞出中的卡片和可以拖动的下一张
+        int front = Math.min(stack.releasedCount(), stack.size() - 1);
+        for (int i = 0; i <= front; i++) {
+            promote(stack.get(i));
+        }
+        if (mPromoteLinkage) {
+            for (int i = front + 1; i < stack.size(); i++) {
+                promote(stack.get(i));
+            }
+        }
+    }
+
+    /**
+     * 所有卡片都已经停止，还原提升过的卡片
+     *
+     * @return 还有卡片在动画中时返回 false，不做任何还原
+     */
+    boolean onIdle(CardStack<CardItemView> stack) {
+        for (int i = 0; i < stack.size(); i++) {
+            CardItemView itemView = stack.get(i);
+            if (itemView.isAnimating()) {
+                return false;
+            }
+        }
+        demoteAll(stack);
+        return true;
+    }
+
+    void demoteAll(CardStack<CardItemView> stack) {
+        for (int i = 0; i < stack.size(); i++) {
+            demote(stack.get(i));
+        }
+    }
+
+    private void promote(CardItemView itemView) {
+        if (itemView.isLayerPromoted() || itemView.getVisibility() != View.VISIBLE
+            || itemView.getLayerType() != View.LAYER_TYPE_NONE) {
+            return;
+        }
+        itemView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        itemView.setLayerPromoted(true);
+        mPromotionCount++;
+    }
+
+    void demote(CardItemView itemView) {
+        if (!itemView.isLayerPromoted()) {
+            return;
+        }
+        itemView.setLayerType(View.LAYER_TYPE_NONE, null);
+        itemView.setLayerPromoted(false);
+        mDemotionCount++;
+    }
+}
@@ -0,0 +1,145 @@
+package com.stone.card.library;
+
+import com.stone.card.core.CardStack;
+
+/**
+ * 跟随卡片运动的绘制优化和性能统计：硬件层策略、底层卡片快照、绘制裁剪、滑动帧耗时
+ * <p>
+ * 面板只在拖动开始、松手、按钮飞出、所有卡片停止以及卡片栈变化时通知这里，
+ * 具体怎样提升硬件层、哪些卡片画快照、是否重新计算遮挡由这里决定。
+ *
+ * @author im_dsd
+ */
+final class MotionEffects {
+    private LayerPolicy mLayerPolicy = new LayerPolicy();
+    /**
+     * 跳过被遮挡和透明的卡片，默认关闭
+     */
+    private final CardDrawCuller mDrawCuller = new CardDrawCuller();
+    /**
+     * 设置了 {@link SwipePerformanceListener} 才会创建
+     */
+    private SwipeFrameMonitor mFrameMonitor;
+    /**
+     * 不小于这一层的卡片画缓存的快照，0 表示不使用快照
+     */
+    private int mSnapshotDepth;
+
+    MotionEffects(int snapshotDepth) {
+        mSnapshotDepth = Math.max(0, snapshotDepth);
+    }
+
+    LayerPolicy getLayerPolicy() {
+        return mLayerPolicy;
+    }
+
+    /**
+     * 换成新的策略前还原旧策略提升过的卡片
+     */
+    void setLayerPolicy(LayerPolicy layerPolicy, CardStack<CardItemView> stack) {
+        if (layerPolicy == null || layerPolicy == mLayerPolicy) {
+            return;
+        }
+        mLayerPolicy.demoteAll(stack);
+        mLayerPolicy = layerPolicy;
+    }
+
+    CardDrawCuller getDrawCuller() {
+        return mDrawCuller;
+    }
+
+    /**
+     * 绘制裁剪开启时，卡片移动和卡片栈变化都要让面板重新绘制
+     */
+    boolean isCulling() {
+        return mDrawCuller.isEnabled();
+    }
+
+    void setSwipePerformanceListener(CardSlidePanel panel, SwipePerformanceListener listener) {
+        if (mFrameMonitor != null) {
+            mFrameMonitor.cancel();
+        }
+        mFrameMonitor = listener == null ? null : new SwipeFrameMonitor(panel, listener);
+    }
+
+    int getSnapshotDepth() {
+        return mSnapshotDepth;
+    }
+
+    void setSnapshotDepth(int depth, CardStack<CardItemView> stack) {
+        mSnapshotDepth = Math.max(0, depth);
+        updateSnapshotModes(stack);
+    }
+
+    /**
+     * 卡片栈的层级变化之后，按新的层重新决定哪些卡片画快照
+     */
+    void updateSnapshotModes(CardStack<CardItemView> stack) {
+        for (int i = 0; i < stack.size(); i++) {
+            stack.get(i).setSnapshotMode(mSnapshotDepth > 0 && i >= mSnapshotDepth);
+        }
+    }
+
+    /**
+     * 手指开始拖动
+     */
+    void onGestureStart(CardStack<CardItemView> stack) {
+        mLayerPolicy.onMoveStarted(stack);
+        if (mFrameMonitor != null) {
+            mFrameMonitor.onGestureStart();
+        }
+    }
+
+    /**
+     * 松手，vanished 表示卡片飞出
+     */
+    void onRelease(boolean vanished) {
+        if (mFrameMonitor != null) {
+            mFrameMonitor.onRelease(vanished);
+        }
+    }
+
+    /**
+     * 按钮或者 {@link CardSlidePanel#swipe(int, int)} 触发的飞出，没有拖动的过程
+     */
+    void onButtonFly(CardStack<CardItemView> stack) {
+        mLayerPolicy.onMoveStarted(stack);
+        if (mFrameMonitor != null) {
+            mFrameMonitor.onGestureStart();
+            mFrameMonitor.onRelease(true);
+        }
+    }
+
+    /**
+     * 不经过手势的移动，例如 {@link CardSlidePanel#rewind()}
+     */
+    void onMoveStarted(CardStack<CardItemView> stack) {
+        mLayerPolicy.onMoveStarted(stack);
+    }
+
+    /**
+     * 卡片的回弹或者飞出结束，所有卡片都停下来后还原硬件层并结束这一次手势的统计
+     */
+    void onSettled(CardStack<CardItemView> stack) {
+        if (mLayerPolicy.onIdle(stack) && mFrameMonitor != null) {
+            mFrameMonitor.onSettled();
+        }
+    }
+
+    /**
+     * 卡片离开卡片栈，比如被保留用于回退
+     */
+    void onCardRemoved(CardItemView itemView) {
+        mLayerPolicy.demote(itemView);
+    }
+
+    /**
+     * 卡片栈重建或者面板离开窗口
+     */
+    void cancel(CardStack<CardItemView> stack) {
+        mLayerPolicy.demoteAll(stack);
+        if (mFrameMonitor != null) {
+            mFrameMonitor.cancel();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.stone.card.library;
+
+import android.content.Context;
+import android.view.GestureDetector.SimpleOnGestureListener;
+import android.view.MotionEvent;
+import android.view.ViewConfiguration;
+
+/**
+ * 手势探测器，移动超过 touch slop 后面板才拦截 touch 事件
+ *
+ * @author xmuSistone
+ */
+class MoveDetector extends SimpleOnGestureListener {
+
+    private final int mTouchSlop;
+
+    public MoveDetector(Context context) {
+        mTouchSlop = ViewConfiguration.get(context).getScaledTouchSlop();
+    }
+
+    @Override
+    public boolean onScroll(MotionEvent e1, MotionEvent e2, float dx, float dy) {
+        // 拖动了，touch不往下传递
+        return Math.abs(dy) + Math.abs(dx) > mTouchSlop;
+    }
+}
@@ -0,0 +1,234 @@
+package com.stone.card.library;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 分页加载的 Adapter，适合没有尽头的卡片流
+ * <p>
+ * 顶层卡片之后剩余的卡片少于 {@link #setLoadThreshold(int)} 时，在后台线程调用
+ * {@link #loadPage(int, int)} 加载下一页，加载完成后在主线程追加并通知面板。
+ * 顶层卡片之前超过 {@link #setKeepBehind(int)} 张的数据会被释放，释放后 index 不变，
+ * {@link #getCount()} 仍然包含已经释放的数据，所以 {@link CardSlidePanel.CardSwitchListener}
+ * 回调的 index 始终是同一条数据。已经释放的 index 调用 {@link #getItem(int)} 返回 null。
+ * {@link #notifyDataSetChanged()} 只重新绑定还保留着的数据，index 不变；需要从第一页重新开始时使用 {@link #refresh()}。
+ *
+ * @param <T> 数据类型
+ * @author im_dsd
+ */
+public abstract class PagedCardAdapter<T> extends CardAdapter {
+    private static final String TAG = "PagedCardAdapter";
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int DEFAULT_LOAD_THRESHOLD = 8;
+    private static final int DEFAULT_KEEP_BEHIND = 10;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * 还没有释放的数据，第一条的 index 是 mFirstIndex，只在主线程访问
+     */
+    private final ArrayList<T> mItems = new ArrayList<>();
+    private int mFirstIndex = 0;
+    private int mShowingIndex = 0;
+    private boolean mLoading = false;
+    private boolean mHasMore = true;
+    /**
+     * {@link #refresh()} 后递增，丢弃旧的加载结果
+     */
+    private int mGeneration = 0;
+    private Executor mExecutor;
+    private int mPageSize = DEFAULT_PAGE_SIZE;
+    private int mLoadThreshold = DEFAULT_LOAD_THRESHOLD;
+    private int mKeepBehind = DEFAULT_KEEP_BEHIND;
+
+    /**
+     * 加载从 startIndex 开始的一页数据，在后台线程执行
+     *
+     * @return 返回空列表或者 null 表示没有更多数据
+     */
+    protected abstract List<T> loadPage(int startIndex, int pageSize) throws Exception;
+
+    /**
+     * 绑定数据，在主线程执行
+     */
+    public abstract void bindItem(View view, T item, int index);
+
+    @Override
+    public int getCount() {
+        return mFirstIndex + mItems.size();
+    }
+
+    @Override
+    public T getItem(int index) {
+        if (index < mFirstIndex || index >= getCount()) {
+            return null;
+        }
+        return mItems.get(index - mFirstIndex);
+    }
+
+    @Override
+    public final void bindView(View view, int index) {
+        bindItem(view, getItem(index), index);
+    }
+
+    @Override
+    public void onStackWindowChanged(int showingIndex, int stackDepth) {
+        mShowingIndex = showingIndex;
+        evictBehind(showingIndex - mKeepBehind);
+        if (getCount() - showingIndex < Math.max(mLoadThreshold, stackDepth)) {
+            loadMore();
+        }
+    }
+
+    /**
+     * 加载下一页，正在加载或者没有更多数据时忽略
+     */
+    public void loadMore() {
+        if (mLoading || !mHasMore) {
+            return;
+        }
+        mLoading = true;
+        final int generation = mGeneration;
+        final int startIndex = getCount();
+        final int pageSize = mPageSize;
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                List<T> page = null;
+                Exception error = null;
+                try {
+                    page = loadPage(startIndex, pageSize);
+                } catch (Exception e) {
+                    error = e;
+                }
+                final List<T> result = page;
+                final Exception failure = error;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            onPageLoaded(startIndex, result, failure);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int startIndex, List<T> page, Exception error) {
+        mLoading = false;
+        if (error != null) {
+            // 下一次卡片切换时会重新加载
+            onLoadFailed(error);
+            return;
+        }
+        if (page == null || page.isEmpty()) {
+            mHasMore = false;
+            return;
+        }
+        mItems.addAll(page);
+        // 面板会回调 onStackWindowChanged，剩余的卡片仍然不够时继续加载
+        notifyItemRangeInserted(startIndex, page.size());
+        if (getCount() - mShowingIndex < mLoadThreshold) {
+            loadMore();
+        }
+    }
+
+    /**
+     * 加载失败，在主线程回调
+     */
+    protected void onLoadFailed(Exception error) {
+        Log.w(TAG, "load page failed", error);
+    }
+
+    /**
+     * 丢弃所有数据，从第一页重新加载
+     */
+    public void refresh() {
+        mGeneration++;
+        mItems.clear();
+        mFirstIndex = 0;
+        mShowingIndex = 0;
+        mLoading = false;
+        mHasMore = true;
+        super.notifyDataSetChanged();
+        loadMore();
+    }
+
+    /**
+     * 数据都由分页加载，数量和 index 不会变化，只是保留着的数据内容变了；
+     * 已经释放的数据不会重新绑定，面板也不会按第一条数据重新定位
+     */
+    @Override
+    public void notifyDataSetChanged() {
+        notifyItemRangeChanged(mFirstIndex, mItems.size());
+    }
+
+    /**
+     * 释放 index 小于 keepFrom 的数据
+     */
+    private void evictBehind(int keepFrom) {
+        int count = Math.min(keepFrom - mFirstIndex, mItems.size());
+        if (count <= 0) {
+            return;
+        }
+        mItems.subList(0, count).clear();
+        mFirstIndex += count;
+    }
+
+    public boolean isLoading() {
+        return mLoading;
+    }
+
+    public boolean hasMore() {
+        return mHasMore;
+    }
+
+    /**
+     * 第一条还没有释放的数据的 index
+     */
+    public int getFirstRetainedIndex() {
+        return mFirstIndex;
+    }
+
+    /**
+     * 设置每一页的数量
+     */
+    public void setPageSize(int pageSize) {
+        mPageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * 顶层卡片之后剩余的卡片少于 threshold 时加载下一页，至少会保证卡片栈是满的
+     */
+    public void setLoadThreshold(int threshold) {
+        mLoadThreshold = Math.max(0, threshold);
+    }
+
+    /**
+     * 顶层卡片之前保留的数据数量，更早的数据会被释放，
+     * 使用 {@link CardSlidePanel#rewind()} 时不要小于需要回退的张数
+     */
+    public void setKeepBehind(int keepBehind) {
+        mKeepBehind = Math.max(0, keepBehind);
+    }
+
+    /**
+     * 设置 {@link #loadPage(int, int)} 执行的线程池，默认是一个后台优先级的单线程池
+     */
+    public void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    private Executor getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = CardExecutors.background();
+        }
+        return mExecutor;
+    }
+}
@@ -0,0 +1,156 @@
+package com.stone.card.library;
+
+import android.view.View;
+
+import com.stone.card.core.DeckEngine;
+import com.stone.card.core.FrameClock;
+
+/**
+ * 面板这一侧的 {@link DeckEngine}：数据来自 adapter，View 操作交给面板，
+ * 帧由 {@link CardAnimationClock} 驱动，同时把 adapter 的数据变化转发给 engine
+ *
+ * @author im_dsd
+ */
+final class PanelDeckHost extends CardAdapter.CardDataObserver
+    implements DeckEngine.Host<CardItemView>, FrameClock, CardAnimationClock.FrameCallback {
+    private final CardSlidePanel mPanel;
+    private final DeckEngine<CardItemView> mEngine;
+    private Runnable mFrame;
+    private boolean mFramePending = false;
+    private long mFrameTimeNanos;
+    /**
+     * engine 的一次 advance 从飞出的卡片回到最底层开始，到新的卡片窗口通知结束，期间包含新数据的绑定
+     */
+    private long mReorderStart = -1;
+
+    PanelDeckHost(CardSlidePanel panel) {
+        mPanel = panel;
+        mEngine = new DeckEngine<>(this, this);
+    }
+
+    DeckEngine<CardItemView> getEngine() {
+        return mEngine;
+    }
+
+    /**
+     * 数据变化时飞出中的卡片会直接完成重新排序，之后继续排队的滑动
+     */
+    @Override
+    public void onChanged() {
+        mEngine.onDataSetChanged();
+        mPanel.drainSwipeQueue();
+    }
+
+    @Override
+    public void onItemRangeChanged(int positionStart, int itemCount) {
+        mEngine.onItemRangeChanged(positionStart, itemCount);
+        mPanel.drainSwipeQueue();
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        mEngine.onItemRangeInserted(positionStart, itemCount);
+        mPanel.drainSwipeQueue();
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        mEngine.onItemRangeRemoved(positionStart, itemCount);
+        mPanel.drainSwipeQueue();
+    }
+
+    @Override
+    public int getItemCount() {
+        return mPanel.getAdapter().getCount();
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return mPanel.getAdapter().hasStableIds();
+    }
+
+    @Override
+    public long getItemId(int index) {
+        return mPanel.getAdapter().getItemId(index);
+    }
+
+    @Override
+    public Object getItem(int index) {
+        return mPanel.getAdapter().getItem(index);
+    }
+
+    @Override
+    public CardItemView bindCard(CardItemView card, int index) {
+        return mPanel.bindCardView(card, index);
+    }
+
+    @Override
+    public void hideCard(CardItemView card) {
+        card.setVisibility(View.INVISIBLE);
+    }
+
+    @Override
+    public void revealCard(CardItemView card, int fadeOrder) {
+        if (fadeOrder < 0) {
+            // 最底层备用的卡片，跟随联动渐显
+            card.setAlpha(0);
+            card.setVisibility(View.VISIBLE);
+        } else {
+            card.setVisibilityWithAnimation(View.VISIBLE, fadeOrder);
+        }
+    }
+
+    @Override
+    public CardItemView recycleToBottom(CardItemView card) {
+        mReorderStart = mPanel.getStats().begin(CardPanelStats.OP_REORDER);
+        return mPanel.recycleCardToBottom(card);
+    }
+
+    @Override
+    public void onFlyFinished(CardItemView card) {
+        mPanel.onDeckFlyFinished(card);
+    }
+
+    @Override
+    public void onShow(int index) {
+        mPanel.dispatchShow(index);
+    }
+
+    @Override
+    public void onStackWindowChanged(int showingIndex, int stackDepth) {
+        if (mReorderStart >= 0) {
+            mPanel.getStats().end(CardPanelStats.OP_REORDER, mReorderStart);
+            mReorderStart = -1;
+        }
+        mPanel.getAdapter().onStackWindowChanged(showingIndex, stackDepth);
+    }
+
+    @Override
+    public void scheduleFrame(Runnable frame) {
+        mFrame = frame;
+        mFramePending = true;
+        CardAnimationClock.getInstance().addAnimation(this);
+    }
+
+    @Override
+    public long getFrameTimeNanos() {
+        return mFrameTimeNanos;
+    }
+
+    @Override
+    public boolean doAnimationFrame(long frameTimeNanos) {
+        mFrameTimeNanos = frameTimeNanos;
+        mFramePending = false;
+        mFrame.run();
+        // engine 在回调中重新请求了下一帧
+        return mFramePending;
+    }
+
+    /**
+     * 面板离开窗口时停止帧回调
+     */
+    void cancelFrame() {
+        mFramePending = false;
+        CardAnimationClock.getInstance().removeAnimation(this);
+    }
+}
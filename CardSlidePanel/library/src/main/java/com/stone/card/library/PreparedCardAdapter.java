@@ -0,0 +1,224 @@
+package com.stone.card.library;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/**
+ * 两阶段绑定的 Adapter
+ * <p>
+ * 1. {@link #prepare(Object, int)} 在后台线程执行，负责格式化文本、计算数据、解析图片地址等耗时工作，
+ * 数据在主线程通过 {@link #getItem(int)} 取出后传入，后台线程不会访问 adapter 的数据列表；
+ * 2. {@link #apply(View, Object, int)} 在主线程执行，只做 View 的修改。
+ * <p>
+ * 面板每次切换卡片都会通知 {@link #onStackWindowChanged(int, int)}，此时会提前为
+ * 即将进入卡片栈的 lookahead 张卡片执行 prepare，结果缓存在有界的 LruCache 中，
+ * adapter 有稳定 id 时以 id 为 key，否则以 index 为 key。
+ * 绑定时如果还没有准备好，会在主线程同步 prepare，保证结果正确。
+ *
+ * @param <T> prepare 产出的数据模型
+ * @author im_dsd
+ */
+public abstract class PreparedCardAdapter<T> extends CardAdapter {
+    private static final String TAG = "PreparedCardAdapter";
+    /**
+     * 卡片栈之外默认预先准备的卡片数量
+     */
+    private static final int DEFAULT_LOOKAHEAD = 4;
+    /**
+     * 默认缓存的数据模型数量，需要大于 卡片层数 + lookahead
+     */
+    private static final int DEFAULT_CACHE_SIZE = 16;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final LruCache<Long, T> mPreparedCache;
+    /**
+     * 正在后台准备中的 key 和对应的任务编号，只在主线程访问。
+     * 数据变化只移除受影响的 key，结果回来时编号对不上就丢弃
+     */
+    private final HashMap<Long, Integer> mPendingTickets = new HashMap<>();
+    private int mNextTicket = 0;
+    private Executor mExecutor;
+    private int mLookahead = DEFAULT_LOOKAHEAD;
+
+    public PreparedCardAdapter() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    public PreparedCardAdapter(int cacheSize) {
+        mPreparedCache = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * 准备数据，在后台线程执行，不能访问 View，也不能访问主线程会修改的数据列表
+     *
+     * @param item  在主线程通过 {@link #getItem(int)} 取出的数据
+     * @param index 数据的位置，只用于计算，不要用它再去取数据
+     */
+    public abstract T prepare(Object item, int index);
+
+    /**
+     * 把准备好的数据应用到 View 上，在主线程执行
+     */
+    public abstract void apply(View view, T model, int index);
+
+    @Override
+    public final void bindView(View view, int index) {
+        long key = getCacheKey(index);
+        T model = mPreparedCache.get(key);
+        if (model == null) {
+            // 后台还没有准备好，只能同步准备
+            model = prepare(getItem(index), index);
+            if (model != null) {
+                mPreparedCache.put(key, model);
+            }
+        }
+        apply(view, model, index);
+    }
+
+    @Override
+    public void onStackWindowChanged(int showingIndex, int stackDepth) {
+        int end = Math.min(getCount(), showingIndex + stackDepth + mLookahead);
+        for (int index = showingIndex; index < end; index++) {
+            long key = getCacheKey(index);
+            if (mPendingTickets.containsKey(key) || mPreparedCache.get(key) != null) {
+                continue;
+            }
+            schedulePrepare(index, key);
+        }
+    }
+
+    private long getCacheKey(int index) {
+        return hasStableIds() ? getItemId(index) : index;
+    }
+
+    private void schedulePrepare(final int index, final long key) {
+        final int ticket = ++mNextTicket;
+        mPendingTickets.put(key, ticket);
+        // 数据列表只在主线程访问，后台线程只拿到这一条数据
+        final Object item = getItem(index);
+        getExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                T model = null;
+                try {
+                    model = prepare(item, index);
+                } catch (RuntimeException e) {
+                    // 后台准备失败，绑定时会在主线程重新准备
+                    Log.w(TAG, "prepare failed at " + index, e);
+                }
+                final T result = model;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Integer current = mPendingTickets.get(key);
+                        if (current == null || current != ticket) {
+                            // 准备期间这个 key 对应的数据变了
+                            return;
+                        }
+                        mPendingTickets.remove(key);
+                        if (result != null) {
+                            mPreparedCache.put(key, result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 数据变化后，已经准备好的数据全部作废
+     */
+    @Override
+    public void notifyDataSetChanged() {
+        invalidatePrepared();
+        super.notifyDataSetChanged();
+    }
+
+    @Override
+    public void notifyItemRangeChanged(int positionStart, int itemCount) {
+        if (hasStableIds()) {
+            int end = Math.min(getCount(), positionStart + itemCount);
+            for (int index = positionStart; index < end; index++) {
+                long id = getItemId(index);
+                mPendingTickets.remove(id);
+                mPreparedCache.remove(id);
+            }
+        } else {
+            removeIndexes(positionStart, positionStart + itemCount);
+        }
+        super.notifyItemRangeChanged(positionStart, itemCount);
+    }
+
+    /**
+     * 插入、删除会让后面的 index 全部错位，以 id 为 key 时缓存仍然有效
+     */
+    @Override
+    public void notifyItemRangeInserted(int positionStart, int itemCount) {
+        if (!hasStableIds()) {
+            removeIndexes(positionStart, Integer.MAX_VALUE);
+        }
+        super.notifyItemRangeInserted(positionStart, itemCount);
+    }
+
+    @Override
+    public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+        if (!hasStableIds()) {
+            removeIndexes(positionStart, Integer.MAX_VALUE);
+        }
+        super.notifyItemRangeRemoved(positionStart, itemCount);
+    }
+
+    /**
+     * 清空已经准备好的数据，正在后台准备的结果也会被丢弃
+     */
+    public void invalidatePrepared() {
+        mPendingTickets.clear();
+        mPreparedCache.evictAll();
+    }
+
+    /**
+     * 以 index 为 key 时，丢弃 [from, to) 范围内已经准备好和正在准备的结果，范围之外的不受影响
+     */
+    private void removeIndexes(int from, int to) {
+        Iterator<Long> pending = mPendingTickets.keySet().iterator();
+        while (pending.hasNext()) {
+            long index = pending.next();
+            if (index >= from && index < to) {
+                pending.remove();
+            }
+        }
+        for (Long index : mPreparedCache.snapshot().keySet()) {
+            if (index >= from && index < to) {
+                mPreparedCache.remove(index);
+            }
+        }
+    }
+
+    /**
+     * 设置 prepare 执行的线程池，默认是一个后台优先级的单线程池
+     */
+    public void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * 设置卡片栈之外预先准备的卡片数量
+     */
+    public void setLookahead(int lookahead) {
+        mLookahead = Math.max(0, lookahead);
+    }
+
+    private Executor getExecutor() {
+        if (mExecutor == null) {
+            mExecutor = CardExecutors.background();
+        }
+        return mExecutor;
+    }
+}
@@ -0,0 +1,80 @@
+package com.stone.card.library;
+
+import java.util.ArrayList;
+
+/**
+ * 最近飞出的卡片，{@link CardSlidePanel#rewind()} 时直接放回顶层，不需要重新绑定数据
+ * <p>
+ * 保留的卡片已经从面板中移除，不参与 measure、layout 和绘制，位置停在飞出的终点。
+ * 超出容量时最早保留的卡片被淘汰，由面板归还到复用池
+ *
+ * @author im_dsd
+ */
+final class RewindCache {
+    /**
+     * 按保留的先后顺序，最后一个是最近飞出的卡片
+     */
+    private final ArrayList<CardItemView> mCards = new ArrayList<>();
+    /**
+     * 卡片飞出时绑定的数据，回退时用来判断数据是否已经变化
+     */
+    private final ArrayList<Object> mItems = new ArrayList<>();
+    private int mCapacity;
+
+    RewindCache(int capacity) {
+        mCapacity = Math.max(0, capacity);
+    }
+
+    int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * 修改容量之后用 {@link #evictOldest()} 淘汰多出来的卡片
+     */
+    void setCapacity(int capacity) {
+        mCapacity = Math.max(0, capacity);
+    }
+
+    /**
+     * 保留一张飞出的卡片
+     *
+     * @return 超出容量被淘汰的卡片，没有时返回 null
+     */
+    CardItemView retain(CardItemView card, Object item) {
+        mCards.add(card);
+        mItems.add(item);
+        return mCards.size() > mCapacity ? evictOldest() : null;
+    }
+
+    boolean isEmpty() {
+        return mCards.isEmpty();
+    }
+
+    int size() {
+        return mCards.size();
+    }
+
+    /**
+     * 最近飞出的卡片绑定的数据
+     */
+    Object peekItem() {
+        return mItems.get(mItems.size() - 1);
+    }
+
+    /**
+     * 取出最近飞出的卡片
+     */
+    CardItemView pop() {
+        mItems.remove(mItems.size() - 1);
+        return mCards.remove(mCards.size() - 1);
+    }
+
+    /**
+     * 淘汰最早保留的卡片
+     */
+    CardItemView evictOldest() {
+        mItems.remove(0);
+        return mCards.remove(0);
+    }
+}
@@ -0,0 +1,220 @@
+package com.stone.card.library;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+/**
+ * 统计一次手势期间每一帧的耗时，结果通过 {@link SwipePerformanceListener} 回调
+ * <p>
+ * 帧时间来自 Choreographer 的 vsync 时间戳，所有数据都存放在预先分配的数组中，统计本身不产生垃圾。
+ * 一次手势超过 {@link #MAX_FRAMES} 帧时，之后的帧只计入帧数、丢帧和最大值，不参与分位数计算。
+ * 松手之后每一帧检查一次前面的卡片是否可以拖动，第一次可以拖动的帧就是下一张卡片可以交互的时间。
+ *
+ * @author im_dsd
+ */
+@SuppressLint("NewApi")
+final class SwipeFrameMonitor {
+    private static final int MAX_FRAMES = 600;
+    private static final long NANOS_PER_MS = 1000000;
+    private static final long NANOS_PER_SECOND = 1000000000;
+    private static final float DEFAULT_REFRESH_RATE = 60f;
+    /**
+     * 不支持 Choreographer 的系统上使用的帧间隔
+     */
+    private static final long FALLBACK_FRAME_DELAY = 16;
+
+    private final CardSlidePanel mPanel;
+    private final SwipePerformanceListener mListener;
+    private final SwipeMetrics mMetrics = new SwipeMetrics();
+    private final long[] mFrameDurations = new long[MAX_FRAMES];
+    private final long[] mSortBuffer = new long[MAX_FRAMES];
+    private final long mFrameIntervalNanos;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mFallbackFrame = new Runnable() {
+        @Override
+        public void run() {
+            doFrame(System.nanoTime());
+        }
+    };
+    /**
+     * Choreographer 在 API 16 才加入，低版本不能加载这个类
+     */
+    private ChoreographerCallback mChoreographerCallback;
+
+    private boolean mActive = false;
+    private boolean mReleased = false;
+    private boolean mVanished = false;
+    private long mStartNanos;
+    private long mReleaseNanos;
+    /**
+     * 松手之后前面的卡片第一次可以拖动的时间，还没有可以拖动时为 -1
+     */
+    private long mInteractiveNanos;
+    private long mLastFrameNanos;
+    private int mFrameCount;
+    private int mDroppedFrames;
+    private long mMaxFrameNanos;
+
+    SwipeFrameMonitor(CardSlidePanel panel, SwipePerformanceListener listener) {
+        mPanel = panel;
+        mListener = listener;
+        Context context = panel.getContext();
+        float refreshRate = DEFAULT_REFRESH_RATE;
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        if (windowManager != null && windowManager.getDefaultDisplay().getRefreshRate() > 0) {
+            refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        }
+        mFrameIntervalNanos = (long) (NANOS_PER_SECOND / refreshRate);
+    }
+
+    /**
+     * 捕获了顶层卡片，上一次手势还没有结束时直接结束
+     */
+    void onGestureStart() {
+        if (mActive) {
+            onSettled();
+        }
+        mActive = true;
+        mReleased = false;
+        mVanished = false;
+        mStartNanos = System.nanoTime();
+        mLastFrameNanos = -1;
+        mFrameCount = 0;
+        mDroppedFrames = 0;
+        mMaxFrameNanos = 0;
+        postFrame();
+    }
+
+    /**
+     * 松手，卡片开始回弹或者飞出
+     */
+    void onRelease(boolean vanished) {
+        if (!mActive || mReleased) {
+            return;
+        }
+        mReleased = true;
+        mVanished = vanished;
+        mReleaseNanos = System.nanoTime();
+        mInteractiveNanos = -1;
+    }
+
+    /**
+     * 卡片停止，或者下一次手势开始时结束上一次的统计
+     */
+    void onSettled() {
+        if (!mActive) {
+            return;
+        }
+        cancel();
+        long now = System.nanoTime();
+        if (!mReleased) {
+            mReleaseNanos = now;
+        }
+        if (!mReleased || mInteractiveNanos < 0) {
+            // 没有检查到可以拖动的帧：已经停止或者下一张卡片已经被拖动，以现在为准
+            mInteractiveNanos = now;
+        }
+        int stored = Math.min(mFrameCount, MAX_FRAMES);
+        System.arraycopy(mFrameDurations, 0, mSortBuffer, 0, stored);
+        insertionSort(mSortBuffer, stored);
+        mMetrics.set(mFrameCount, mDroppedFrames,
+            toMillis(percentile(mSortBuffer, stored, 0.5f)),
+            toMillis(percentile(mSortBuffer, stored, 0.95f)),
+            toMillis(mMaxFrameNanos),
+            toMillis(Math.max(0, mInteractiveNanos - mReleaseNanos)),
+            toMillis(now - mStartNanos),
+            mVanished);
+        mListener.onSwipeFinished(mMetrics);
+    }
+
+    /**
+     * 放弃本次统计，不会回调
+     */
+    void cancel() {
+        mActive = false;
+        mHandler.removeCallbacks(mFallbackFrame);
+        if (mChoreographerCallback != null) {
+            Choreographer.getInstance().removeFrameCallback(mChoreographerCallback);
+        }
+    }
+
+    void doFrame(long frameTimeNanos) {
+        if (!mActive) {
+            return;
+        }
+        if (mLastFrameNanos >= 0) {
+            long duration = frameTimeNanos - mLastFrameNanos;
+            if (mFrameCount < MAX_FRAMES) {
+                mFrameDurations[mFrameCount] = duration;
+            }
+            mFrameCount++;
+            mMaxFrameNanos = Math.max(mMaxFrameNanos, duration);
+            // 四舍五入到刷新间隔的整数倍，多出来的就是丢掉的帧
+            long intervals = (duration + mFrameIntervalNanos / 2) / mFrameIntervalNanos;
+            if (intervals > 1) {
+                mDroppedFrames += intervals - 1;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        if (mReleased && mInteractiveNanos < 0 && mPanel.isFrontCapturable()) {
+            mInteractiveNanos = Math.max(frameTimeNanos, mReleaseNanos);
+        }
+        postFrame();
+    }
+
+    private void postFrame() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (mChoreographerCallback == null) {
+                mChoreographerCallback = new ChoreographerCallback(this);
+            }
+            Choreographer.getInstance().postFrameCallback(mChoreographerCallback);
+        } else {
+            mHandler.postDelayed(mFallbackFrame, FALLBACK_FRAME_DELAY);
+        }
+    }
+
+    private static void insertionSort(long[] values, int count) {
+        for (int i = 1; i < count; i++) {
+            long value = values[i];
+            int j = i - 1;
+            while (j >= 0 && values[j] > value) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = value;
+        }
+    }
+
+    /**
+     * 最近秩法计算分位数，values 的前 count 个元素必须已经排好序
+     */
+    private static long percentile(long[] values, int count, float fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(fraction * count);
+        return values[Math.max(0, rank - 1)];
+    }
+
+    private static float toMillis(long nanos) {
+        return nanos / (float) NANOS_PER_MS;
+    }
+
+    private static class ChoreographerCallback implements Choreographer.FrameCallback {
+        private final SwipeFrameMonitor mMonitor;
+
+        ChoreographerCallback(SwipeFrameMonitor monitor) {
+            mMonitor = monitor;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mMonitor.doFrame(frameTimeNanos);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.stone.card.library;
+
+/**
+ * 一次手势的帧数据，时间的单位都是毫秒
+ *
+ * @author im_dsd
+ */
+public final class SwipeMetrics {
+    private int mFrameCount;
+    private int mDroppedFrames;
+    private float mFrameP50;
+    private float mFrameP95;
+    private float mFrameMax;
+    private float mReleaseToInteractive;
+    private float mGestureDuration;
+    private boolean mVanished;
+
+    SwipeMetrics() {
+    }
+
+    /**
+     * 手势期间的帧数
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * 丢掉的帧数，按屏幕刷新间隔计算，一帧耗时两个刷新间隔算丢一帧
+     */
+    public int getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    public float getFrameP50() {
+        return mFrameP50;
+    }
+
+    public float getFrameP95() {
+        return mFrameP95;
+    }
+
+    public float getFrameMax() {
+        return mFrameMax;
+    }
+
+    /**
+     * 从松手到前面的卡片（飞出时是下一张）可以拖动的时间，按帧检查；
+     * 没有可以拖动的卡片时是从松手到卡片停止的时间
+     */
+    public float getReleaseToInteractive() {
+        return mReleaseToInteractive;
+    }
+
+    /**
+     * 从捕获卡片到动画结束的总时间
+     */
+    public float getGestureDuration() {
+        return mGestureDuration;
+    }
+
+    /**
+     * 卡片是否飞出，false 表示回弹到了原位
+     */
+    public boolean isVanished() {
+        return mVanished;
+    }
+
+    void set(int frameCount, int droppedFrames, float p50, float p95, float max,
+             float releaseToInteractive, float gestureDuration, boolean vanished) {
+        mFrameCount = frameCount;
+        mDroppedFrames = droppedFrames;
+        mFrameP50 = p50;
+        mFrameP95 = p95;
+        mFrameMax = max;
+        mReleaseToInteractive = releaseToInteractive;
+        mGestureDuration = gestureDuration;
+        mVanished = vanished;
+    }
+
+    @Override
+    public String toString() {
+        return "SwipeMetrics{frames=" + mFrameCount + ", dropped=" + mDroppedFrames
+            + ", p50=" + mFrameP50 + "ms, p95=" + mFrameP95 + "ms, max=" + mFrameMax
+            + "ms, releaseToInteractive=" + mReleaseToInteractive + "ms, vanished=" + mVanished + "}";
+    }
+}
@@ -0,0 +1,17 @@
+package com.stone.card.library;
+
+/**
+ * 滑动性能回调，通过 {@link CardSlidePanel#setSwipePerformanceListener(SwipePerformanceListener)} 开启
+ * <p>
+ * 每一次手势（从捕获顶层卡片到卡片回弹或飞出结束）结束后在主线程回调一次。
+ *
+ * @author im_dsd
+ */
+public interface SwipePerformanceListener {
+    /**
+     * 一次手势结束
+     *
+     * @param metrics 本次手势的帧数据，对象会被复用，回调返回后内容会被覆盖，需要保存时请自行复制
+     */
+    void onSwipeFinished(SwipeMetrics metrics);
+}
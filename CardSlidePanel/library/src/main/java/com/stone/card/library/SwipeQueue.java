@@ -0,0 +1,68 @@
+package com.stone.card.library;
+
+/**
+ * 排队等待飞出的滑动方向，先进先出
+ * <p>
+ * 排队越多，每一张的飞出动画越短，连续点击时不会越积越慢
+ *
+ * @author im_dsd
+ */
+final class SwipeQueue {
+    /**
+     * 排队时飞出动画最短的时长，毫秒
+     */
+    private static final int MIN_FLY_DURATION = 80;
+
+    private int[] mTypes = new int[8];
+    private int mHead = 0;
+    private int mSize = 0;
+
+    void add(int type, int count) {
+        if (mSize + count > mTypes.length) {
+            grow(mSize + count);
+        }
+        for (int i = 0; i < count; i++) {
+            mTypes[(mHead + mSize) % mTypes.length] = type;
+            mSize++;
+        }
+    }
+
+    int poll() {
+        int type = mTypes[mHead];
+        mHead = (mHead + 1) % mTypes.length;
+        mSize--;
+        return type;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    void clear() {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    /**
+     * 按还在排队的数量缩短飞出时长，没有排队时保持原样
+     */
+    int compress(int duration) {
+        if (mSize == 0 || duration <= MIN_FLY_DURATION) {
+            return duration;
+        }
+        return Math.max(MIN_FLY_DURATION, duration / (mSize + 1));
+    }
+
+    private void grow(int minCapacity) {
+        int[] types = new int[Math.max(minCapacity, mTypes.length * 2)];
+        for (int i = 0; i < mSize; i++) {
+            types[i] = mTypes[(mHead + i) % mTypes.length];
+        }
+        mTypes = types;
+        mHead = 0;
+    }
+}
@@ -0,0 +1,91 @@
+package com.stone.card.library;
+
+import com.stone.card.core.DeckEngine;
+
+/**
+ * 按钮点击和 {@link CardSlidePanel#swipe(int, int)} 的排队
+ * <p>
+ * 没有卡片在飞出、也没有在拖动时，让排在最前面的滑动开始飞出；排队的数量不少于卡片层数时，
+ * 除了最后一张都直接跳过，只回调 onCardVanish，卡片栈只重新绑定一次。
+ *
+ * @author im_dsd
+ */
+final class SwipeScheduler implements Runnable {
+    private final CardSlidePanel mPanel;
+    private final DeckEngine<CardItemView> mDeck;
+    private final SwipeQueue mQueue = new SwipeQueue();
+
+    SwipeScheduler(CardSlidePanel panel, DeckEngine<CardItemView> deck) {
+        mPanel = panel;
+        mDeck = deck;
+    }
+
+    void swipe(int count, int type) {
+        // 飞出中的卡片已经划走了，不能再排队
+        count = Math.min(count, mDeck.getSwipeableCount() - mQueue.size());
+        if (count <= 0) {
+            return;
+        }
+        mQueue.add(type, count);
+        drain();
+    }
+
+    /**
+     * 没有卡片在飞出、也没有在拖动时，让排在最前面的滑动开始飞出
+     */
+    void drain() {
+        if (mQueue.isEmpty() || mDeck.hasReleased() || !mPanel.isDragIdle()) {
+            return;
+        }
+        if (mQueue.size() >= mPanel.getStackDepth()) {
+            int skipCount = mQueue.size() - 1;
+            int showing = mDeck.getShowing();
+            int itemCount = mPanel.getAdapter().getCount();
+            for (int i = 0; i < skipCount; i++) {
+                int type = mQueue.poll();
+                if (showing + i < itemCount) {
+                    mPanel.dispatchVanish(showing + i, type);
+                }
+            }
+            CardPanelStats stats = mPanel.getStats();
+            long start = stats.begin(CardPanelStats.OP_REORDER);
+            mDeck.skip(skipCount);
+            stats.end(CardPanelStats.OP_REORDER, start);
+        }
+        if (!mDeck.canRelease()) {
+            // 已经没有卡片可以划走
+            mQueue.clear();
+            return;
+        }
+        mPanel.flyOut(mQueue.poll());
+    }
+
+    /**
+     * 拖动中排队的滑动，等拖动状态恢复为 IDLE 之后开始
+     */
+    void postDrain() {
+        if (!mQueue.isEmpty()) {
+            mPanel.post(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        drain();
+    }
+
+    /**
+     * 按下屏幕、{@link CardSlidePanel#rewind()} 或者卡片栈重建时丢弃排队
+     */
+    void clear() {
+        mQueue.clear();
+        mPanel.removeCallbacks(this);
+    }
+
+    /**
+     * 排队越多飞出动画越短
+     */
+    int compress(int duration) {
+        return mQueue.compress(duration);
+    }
+}
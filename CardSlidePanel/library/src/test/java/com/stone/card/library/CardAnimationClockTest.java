@@ -0,0 +1,96 @@
+package com.stone.card.library;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link CardAnimationClock#doFrame(long)} 的分配测试，android.jar 中的方法返回默认值，
+ * 帧由测试直接推进
+ *
+ * @author im_dsd
+ */
+public class CardAnimationClockTest {
+    private static final int FRAMES = 600;
+    private static final long FRAME_NANOS = 16666667;
+
+    private CardAnimationClock mClock;
+    private long mFrameTimeNanos = 0;
+    private int mAnimationFrames = 0;
+    private int mFrameEndRuns = 0;
+
+    /**
+     * 拖动中的卡片：每一帧推进一次，并在帧末尾执行一次联动
+     */
+    private final CardAnimationClock.FrameCallback mAnimation = new CardAnimationClock.FrameCallback() {
+        @Override
+        public boolean doAnimationFrame(long frameTimeNanos) {
+            mAnimationFrames++;
+            mClock.runAtFrameEnd(mLinkage);
+            return true;
+        }
+    };
+    private final Runnable mLinkage = new Runnable() {
+        @Override
+        public void run() {
+            mFrameEndRuns++;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mClock = CardAnimationClock.getInstance();
+        mClock.addAnimation(mAnimation);
+    }
+
+    @After
+    public void tearDown() {
+        mClock.removeAnimation(mAnimation);
+    }
+
+    @Test
+    public void doFrame_runsAnimationsAndFrameEndTasks() {
+        runFrames(3);
+        assertEquals(3, mAnimationFrames);
+        // 第一帧登记的任务在同一帧内执行
+        assertEquals(3, mFrameEndRuns);
+    }
+
+    @Test
+    public void doFrame_doesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        // 预热，排除类加载、JIT 和快照列表扩容的影响
+        runFrames(FRAMES);
+        // 两次读取之间什么都不做，得到读取本身的分配量
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+        long overhead = after - before;
+
+        before = threadBean.getThreadAllocatedBytes(threadId);
+        runFrames(FRAMES);
+        after = threadBean.getThreadAllocatedBytes(threadId);
+
+        assertTrue(mFrameEndRuns == 2 * FRAMES);
+        assertEquals(0, Math.max(0, after - before - overhead));
+    }
+
+    private void runFrames(int frames) {
+        for (int i = 0; i < frames; i++) {
+            mFrameTimeNanos += FRAME_NANOS;
+            mClock.doFrame(mFrameTimeNanos);
+        }
+    }
+}